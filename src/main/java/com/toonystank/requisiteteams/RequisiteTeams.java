@@ -2,6 +2,7 @@ package com.toonystank.requisiteteams;
 
 import com.toonystank.requisiteteams.command.TeamsCommand;
 import com.toonystank.requisiteteams.data.PlayerDataManager;
+import com.toonystank.requisiteteams.data.PlayerListener;
 import com.toonystank.requisiteteams.data.RequisitePlayer;
 import com.toonystank.requisiteteams.level.LevelData;
 import com.toonystank.requisiteteams.placeholders.PlaceholderRequest;
@@ -9,6 +10,7 @@ import com.toonystank.requisiteteams.team.Leaderboard;
 import com.toonystank.requisiteteams.team.Team;
 import com.toonystank.requisiteteams.team.TeamManager;
 import com.toonystank.requisiteteams.team.TeamSaveScheduler;
+import com.toonystank.requisiteteams.team.XpIngestQueue;
 import com.toonystank.requisiteteams.team.rank.RankData;
 import com.toonystank.requisiteteams.utils.MainConfig;
 import com.toonystank.requisiteteams.utils.MessageUtils;
@@ -18,8 +20,12 @@ import net.milkbowl.vault.economy.Economy;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Getter
 public final class RequisiteTeams extends JavaPlugin {
@@ -27,8 +33,14 @@ public final class RequisiteTeams extends JavaPlugin {
     // Change this for all the console outputs
     private final String pluginName = "RequisiteTeams";
 
+    // how long a team write still running after a timed-out shutdown may take before the storage is left open
+    private static final long ABANDON_GRACE_MILLIS = 1000;
+
     @Getter
     private static RequisiteTeams instance;
+    // set first thing in onDisable, from then on teams and players are no longer changed
+    @Getter
+    private static volatile boolean shuttingDown;
 
     private PlayerDataManager playerDataManager;
 
@@ -36,6 +48,8 @@ public final class RequisiteTeams extends JavaPlugin {
     private LevelData levelData;
     private RankData rankData;
     private TeamManager teamManager;
+    private TeamSaveScheduler teamSaveScheduler;
+    private XpIngestQueue xpIngestQueue;
     private Leaderboard leaderboard;
     private PlaceholderRequest placeholderRequest;
     @Getter
@@ -45,13 +59,8 @@ public final class RequisiteTeams extends JavaPlugin {
     @Override
     public void onEnable() {
         instance = this;
+        shuttingDown = false;
         MessageUtils.toConsole("Enabling " + pluginName + "...", false);
-        try {
-            this.playerDataManager = new PlayerDataManager();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
         try {
             this.mainConfig = new MainConfig();
             MessageUtils.toConsole(pluginName + " has been enabled successfully.", false);
@@ -59,6 +68,13 @@ public final class RequisiteTeams extends JavaPlugin {
             MessageUtils.error("Failed to load config.yml: " + e.getMessage());
             e.printStackTrace();
         }
+
+        // after the main config so the player database opens with the configured SQLite tuning
+        try {
+            this.playerDataManager = new PlayerDataManager();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
         this.leaderboard = new Leaderboard(this);
         try {
             this.levelData = new LevelData();
@@ -70,16 +86,19 @@ public final class RequisiteTeams extends JavaPlugin {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        this.teamManager = new TeamManager();
         try {
+            this.teamManager = new TeamManager();
             teamManager.loadTeams();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         new TeamsCommand(this);
+        getServer().getPluginManager().registerEvents(new PlayerListener(), this);
 
-        TeamSaveScheduler teamSaveScheduler = new TeamSaveScheduler(teamManager,this,300);
+        this.teamSaveScheduler = new TeamSaveScheduler(teamManager,this,mainConfig.getAutosaveIntervalSeconds());
         teamSaveScheduler.start();
+        this.xpIngestQueue = new XpIngestQueue(this, mainConfig.getXpIngestMaxDrainMillis(), mainConfig.getXpIngestMaxQueueSize());
+        xpIngestQueue.start();
         this.placeholderRequest = new PlaceholderRequest(this,mainConfig.getLanguageConfig(),teamManager,levelData);
 
         // setupEconomy();
@@ -89,8 +108,96 @@ public final class RequisiteTeams extends JavaPlugin {
     @Override
     public void onDisable() {
         MessageUtils.toConsole("Disabling " + pluginName + "...", false);
-        // Add shutdown tasks here if needed
+        long start = System.currentTimeMillis();
+        int timeoutSeconds = mainConfig != null ? mainConfig.getShutdownTimeoutSeconds() : 10;
+        long deadline = start + timeoutSeconds * 1000L;
+
+        // stop: apply the queued XP while changes are still accepted, then reject changes and autosaves
+        if (xpIngestQueue != null) xpIngestQueue.stop();
+        shuttingDown = true;
+        if (teamSaveScheduler != null) teamSaveScheduler.stop();
+        long phaseStart = System.currentTimeMillis();
+
+        // drain: let queued autosaves and deletions finish first, they were captured before the final state
+        boolean drained = teamManager == null || teamManager.awaitPendingWrites(remaining(deadline));
+        if (!drained) MessageUtils.warning("Timed out waiting for a running team save");
+        MessageUtils.toConsole("Shutdown: drained pending saves in " + (System.currentTimeMillis() - phaseStart) + " ms", false);
+        phaseStart = System.currentTimeMillis();
+
+        // flush: teams are captured here and written by the team writer while the player store writes players
+        CompletableFuture<Void> teamFlush = teamManager == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.allOf(teamManager.saveDirtyTeamsAsync(), teamManager.writeSnapshot());
+        CompletableFuture<Void> playerFlush = playerDataManager == null
+                ? CompletableFuture.completedFuture(null)
+                : playerDataManager.saveDirtyPlayers();
+        boolean teamsFlushed = await(teamFlush, "teams", deadline);
+        boolean playersFlushed = await(playerFlush, "players", deadline);
+        MessageUtils.toConsole("Shutdown: flushed teams and players in " + (System.currentTimeMillis() - phaseStart) + " ms", false);
+        phaseStart = System.currentTimeMillis();
+
+        // close: only close what is no longer being written, an unfinished write is recovered from the XP journal
+        if (teamManager != null) {
+            if (drained && teamsFlushed) {
+                teamManager.close();
+            } else {
+                teamManager.abandon(ABANDON_GRACE_MILLIS);
+            }
+        }
+        if (playerDataManager != null && playersFlushed) playerDataManager.close();
+        MessageUtils.toConsole("Shutdown: closed storage in " + (System.currentTimeMillis() - phaseStart) + " ms", false);
+        MessageUtils.toConsole(pluginName + " disabled in " + (System.currentTimeMillis() - start) + " ms", false);
+    }
+
+    private static boolean await(CompletableFuture<Void> future, String what, long deadline) {
+        try {
+            future.get(remaining(deadline), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            MessageUtils.error("Timed out saving " + what + " on shutdown, unsaved changes may be lost");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            MessageUtils.error("Interrupted while saving " + what + " on shutdown");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            MessageUtils.error("Failed to save " + what + " on shutdown: " + cause.getMessage());
+            return true;
+        }
+        return false;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.currentTimeMillis());
     }
+    /**
+     * Queues XP for a player and their team. Safe to call from any thread and cheap enough to call per event:
+     * the XP is applied on the next tick, summed with the other XP of the player and the team in that tick.
+     *
+     * @param playerName The name of the player.
+     * @param xp         The XP, must be positive.
+     * @return false if the XP was rejected because it is not positive or too much XP is queued.
+     */
+    public boolean queueXp(String playerName, double xp) {
+        return xpIngestQueue != null && xpIngestQueue.enqueue(playerName, xp);
+    }
+
+    /**
+     * Queues XP for a player and their team, see {@link #queueXp(String, double)}.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param xp         The XP, must be positive.
+     * @return false if the XP was rejected because it is not positive or too much XP is queued.
+     */
+    public boolean queueXp(UUID playerUUID, double xp) {
+        return xpIngestQueue != null && xpIngestQueue.enqueue(playerUUID, xp);
+    }
+
+    /**
+     * Adds XP to a player and their team right away. Must be called on the server thread; for many events prefer
+     * {@link #queueXp(String, double)}.
+     *
+     * @return The XP that was added to the player.
+     */
     public double addXpToPlayer(String playerName, double xp) {
         if (playerDataManager == null) {
             MessageUtils.error("PlayerDataManager is not initialized.");
@@ -112,7 +219,8 @@ public final class RequisiteTeams extends JavaPlugin {
         MessageUtils.debug("Adding " + xp + " XP to player " + playerName + ".");
         double xpAddedToPlayer = player.addXP(xp);
         Team team = teamManager.getTeamByPlayer(player);
-        team.getTeamLevel().addXp(xpAddedToPlayer);
+        if (team == null) return xpAddedToPlayer;
+        team.getTeamLevel().addXp(xpAddedToPlayer, player.getUuid());
         return xpAddedToPlayer;
     }
 
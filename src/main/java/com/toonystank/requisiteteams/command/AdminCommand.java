@@ -0,0 +1,203 @@
+package com.toonystank.requisiteteams.command;
+
+import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.command.manager.SubCommand;
+import com.toonystank.requisiteteams.team.TeamManager;
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import com.toonystank.requisiteteams.team.TeamVerifier;
+import com.toonystank.requisiteteams.team.XpIngestQueue;
+import com.toonystank.requisiteteams.team.storage.TeamRepository;
+import com.toonystank.requisiteteams.utils.Handlers;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@code /teams admin ...}, maintenance commands for server administrators.
+ */
+public class AdminCommand implements SubCommand {
+
+    private static final List<String> STORAGE_TYPES = List.of("yaml", "sqlite", "memory");
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    private static final int REPORTED_ISSUES = 10;
+    private static final String USAGE = "Usage: /teams admin <migrate <from> <to>|verify [repair]|xpqueue>";
+
+    private final AtomicBoolean migrating = new AtomicBoolean();
+    private final AtomicBoolean verifying = new AtomicBoolean();
+
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (args.length >= 1 && args[0].equalsIgnoreCase("migrate")) {
+            migrate(sender, args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equalsIgnoreCase("xpqueue")) {
+            xpQueue(sender);
+            return;
+        }
+        if (args.length >= 1 && args[0].equalsIgnoreCase("verify")) {
+            verify(sender, args.length >= 2 && args[1].equalsIgnoreCase("repair"));
+            return;
+        }
+        sender.sendMessage(USAGE);
+    }
+
+    /**
+     * Streams every team from one backend into another in batches, off the server thread.
+     * The configured backend stays in use, switch {@code storage.type} and restart once the migration is done.
+     */
+    private void migrate(CommandSender sender, String[] args) {
+        if (args.length < 3) {
+            sender.sendMessage(USAGE);
+            return;
+        }
+        String from = args[1].toLowerCase();
+        String to = args[2].toLowerCase();
+        if (!STORAGE_TYPES.contains(from) || !STORAGE_TYPES.contains(to)) {
+            sender.sendMessage("Unknown storage type, expected one of " + String.join(", ", STORAGE_TYPES));
+            return;
+        }
+        if (from.equals(to)) {
+            sender.sendMessage("Source and target storage are the same.");
+            return;
+        }
+        if (!migrating.compareAndSet(false, true)) {
+            sender.sendMessage("A migration is already running.");
+            return;
+        }
+        TeamManager teamManager = TeamManager.getInstance();
+        TeamRepository live = teamManager.getRepository();
+        sender.sendMessage("Migrating teams from " + from + " to " + to + "...");
+        // make sure the live backend holds the latest state before it is read from
+        teamManager.saveDirtyTeamsAsync().whenComplete((saved, error) -> {
+            if (error != null) MessageUtils.warning("Failed to save teams before the migration: " + error.getMessage());
+            Bukkit.getScheduler().runTaskAsynchronously(RequisiteTeams.getInstance(), () -> migrate(sender, live, from, to));
+        });
+    }
+
+    private void migrate(CommandSender sender, TeamRepository live, String from, String to) {
+        long start = System.currentTimeMillis();
+        TeamRepository source = null;
+        TeamRepository target = null;
+        int shards = RequisiteTeams.getInstance().getMainConfig().getStorageShards();
+        try {
+            source = live.getType().equals(from) ? live : TeamRepository.open(from, shards);
+            target = live.getType().equals(to) ? live : TeamRepository.open(to, shards);
+            List<UUID> teamUUIDs = source.listTeams();
+            int migrated = 0;
+            for (int i = 0; i < teamUUIDs.size(); i += MIGRATION_BATCH_SIZE) {
+                List<UUID> chunk = teamUUIDs.subList(i, Math.min(i + MIGRATION_BATCH_SIZE, teamUUIDs.size()));
+                List<TeamSnapshot> teams = source.loadBatch(new ArrayList<>(chunk));
+                target.saveBatch(teams);
+                migrated += teams.size();
+                int progress = migrated;
+                Handlers.runTask(() -> sender.sendMessage("Migrated " + progress + "/" + teamUUIDs.size() + " teams"));
+            }
+            int total = migrated;
+            long took = System.currentTimeMillis() - start;
+            MessageUtils.toConsole("Migrated " + total + " teams from " + from + " to " + to + " in " + took + " ms", false);
+            Handlers.runTask(() -> sender.sendMessage("Migration finished: " + total + " teams in " + took + " ms. Set storage.type to " + to + " and restart to use it."));
+        } catch (IOException | IllegalArgumentException e) {
+            MessageUtils.error("Team migration from " + from + " to " + to + " failed: " + e.getMessage());
+            Handlers.runTask(() -> sender.sendMessage("Migration failed: " + e.getMessage()));
+        } finally {
+            if (source != null && source != live) source.close();
+            if (target != null && target != live) target.close();
+            migrating.set(false);
+        }
+    }
+
+    /**
+     * Checks every stored team in parallel, off the server thread, and reports the problems found. With
+     * {@code repair} the teams that can be repaired are written back and swapped in on the server thread.
+     */
+    private void verify(CommandSender sender, boolean repair) {
+        if (!verifying.compareAndSet(false, true)) {
+            sender.sendMessage("A verification is already running.");
+            return;
+        }
+        TeamManager teamManager = TeamManager.getInstance();
+        sender.sendMessage(repair ? "Verifying and repairing teams..." : "Verifying teams...");
+        // taken on the server thread, so every check of the async pass sees the same memberships
+        Map<UUID, UUID> loadedMemberships = TeamManager.getMembershipSnapshot();
+        // verify what is stored, including the latest changes
+        teamManager.saveDirtyTeamsAsync().whenComplete((saved, error) -> {
+            if (error != null) MessageUtils.warning("Failed to save teams before the verification: " + error.getMessage());
+            Bukkit.getScheduler().runTaskAsynchronously(RequisiteTeams.getInstance(), () -> verify(sender, teamManager, repair, loadedMemberships));
+        });
+    }
+
+    private void verify(CommandSender sender, TeamManager teamManager, boolean repair, Map<UUID, UUID> loadedMemberships) {
+        TeamVerifier.Report report;
+        try {
+            report = new TeamVerifier(teamManager.getRepository()).verify(repair, loadedMemberships);
+        } catch (IOException e) {
+            verifying.set(false);
+            MessageUtils.error("Team verification failed: " + e.getMessage());
+            Handlers.runTask(() -> sender.sendMessage("Verification failed: " + e.getMessage()));
+            return;
+        }
+        for (TeamVerifier.Issue issue : report.issues()) {
+            MessageUtils.toConsole(issue.toString(), true);
+        }
+        MessageUtils.toConsole("Verified " + report.scanned() + " teams in " + report.millis() + " ms, found " + report.issues().size() + " problems", false);
+        Handlers.runTask(() -> {
+            sender.sendMessage("Verified " + report.scanned() + " teams in " + report.millis() + " ms, found " + report.issues().size() + " problems.");
+            for (Map.Entry<TeamVerifier.Type, Integer> count : report.countByType().entrySet()) {
+                sender.sendMessage(" - " + count.getKey() + ": " + count.getValue());
+            }
+            report.issues().stream().limit(REPORTED_ISSUES).forEach(issue -> sender.sendMessage(" " + issue));
+            if (report.issues().size() > REPORTED_ISSUES) sender.sendMessage(" ... see the console for the full list");
+            if (!repair || report.repaired().isEmpty()) {
+                verifying.set(false);
+                return;
+            }
+            teamManager.applyRepairs(report.repaired()).whenComplete((repaired, error) -> {
+                verifying.set(false);
+                if (error != null) {
+                    MessageUtils.error("Failed to repair teams: " + error.getMessage());
+                    Handlers.runTask(() -> sender.sendMessage("Repair failed: " + error.getMessage()));
+                    return;
+                }
+                MessageUtils.toConsole("Repaired " + repaired + " teams", false);
+                Handlers.runTask(() -> sender.sendMessage("Repaired " + repaired + " teams, unparsable teams and teams without a name have to be fixed by hand."));
+            });
+        });
+    }
+
+    /**
+     * Shows the state of the XP ingestion queue.
+     */
+    private void xpQueue(CommandSender sender) {
+        XpIngestQueue queue = RequisiteTeams.getInstance().getXpIngestQueue();
+        if (queue == null) {
+            sender.sendMessage("The XP queue is not running.");
+            return;
+        }
+        XpIngestQueue.Metrics metrics = queue.getMetrics();
+        sender.sendMessage("XP queue: " + metrics.depth() + " queued, peak " + metrics.peakDepth() + " since the last check");
+        sender.sendMessage("Queued " + metrics.enqueued() + ", applied " + metrics.applied() + ", rejected " + metrics.rejected() + " events since startup");
+        sender.sendMessage("Last drain applied " + metrics.lastDrained() + " events in " + metrics.lastDrainMicros() + " microseconds");
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, String[] args) {
+        if (args.length == 1) return List.of("migrate", "verify", "xpqueue");
+        if (args.length == 2 && args[0].equalsIgnoreCase("verify")) return List.of("repair");
+        if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("migrate")) return STORAGE_TYPES;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean hasBasePermission(CommandSender sender) {
+        return Handlers.hasPermission(sender, "admin");
+    }
+}
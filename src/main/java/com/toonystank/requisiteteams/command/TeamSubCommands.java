@@ -6,6 +6,7 @@ import com.toonystank.requisiteteams.data.RequisitePlayer;
 import com.toonystank.requisiteteams.level.Level;
 import com.toonystank.requisiteteams.team.Team;
 import com.toonystank.requisiteteams.team.TeamManager;
+import com.toonystank.requisiteteams.team.TeamView;
 import com.toonystank.requisiteteams.team.rank.Rank;
 import com.toonystank.requisiteteams.team.rank.RankPermissions;
 import com.toonystank.requisiteteams.team.rank.RankRegistry;
@@ -94,7 +95,8 @@ public class TeamSubCommands {
                     sender.sendMessage("XP amount must be positive.");
                     return;
                 }
-                Level newLevel = team.getTeamLevel().addXp(xp);
+                team.getTeamLevel().addXp(xp);
+                Level newLevel = team.getTeamLevel().levelUp();
                 sender.sendMessage("Added " + xp + " XP to team " + teamName + ". Current level: " + newLevel.getLevel());
             } catch (NumberFormatException e) {
                 sender.sendMessage("Invalid XP amount: " + args[1]);
@@ -210,7 +212,7 @@ public class TeamSubCommands {
             }
             if (sender instanceof Player) {
                 RequisitePlayer player = PlayerDataManager.getPlayer(((Player) sender).getName());
-                if (player == null || !player.getTeamUUID().equals(team.getTeamUUID()) || !player.getRank().isOwnerRank()) {
+                if (player == null || !team.getTeamUUID().equals(TeamManager.getTeamUUIDOf(player.getUuid())) || !player.getRank().isOwnerRank()) {
                     sender.sendMessage("You must be the team owner to delete the team.");
                     return;
                 }
@@ -263,7 +265,7 @@ public class TeamSubCommands {
                 return;
             }
             RequisitePlayer senderPlayer = PlayerDataManager.getPlayer(sender.getName());
-            if (senderPlayer == null || !senderPlayer.getTeamUUID().equals(team.getTeamUUID()) || !senderPlayer.getRank().hasPermission(RankPermissions.ADD_MEMBER)) {
+            if (senderPlayer == null || !team.getTeamUUID().equals(TeamManager.getTeamUUIDOf(senderPlayer.getUuid())) || !senderPlayer.getRank().hasPermission(RankPermissions.ADD_MEMBER)) {
                 sender.sendMessage("You don't have permission to add members to this team.");
                 return;
             }
@@ -335,11 +337,11 @@ public class TeamSubCommands {
                 return;
             }
             RequisitePlayer senderPlayer = PlayerDataManager.getPlayer(sender.getName());
-            if (senderPlayer == null || !senderPlayer.getTeamUUID().equals(team.getTeamUUID()) || !senderPlayer.getRank().hasPermission(RankPermissions.REMOVE_MEMBER)) {
+            if (senderPlayer == null || !team.getTeamUUID().equals(TeamManager.getTeamUUIDOf(senderPlayer.getUuid())) || !senderPlayer.getRank().hasPermission(RankPermissions.REMOVE_MEMBER)) {
                 sender.sendMessage("You don't have permission to kick members from this team.");
                 return;
             }
-            if (!team.getMembers().contains(requisitePlayer.getUuid())) {
+            if (!team.isMember(requisitePlayer.getUuid())) {
                 sender.sendMessage("Player " + args[1] + " is not in team " + teamName + ".");
                 return;
             }
@@ -410,11 +412,11 @@ public class TeamSubCommands {
                 return;
             }
             RequisitePlayer senderPlayer = PlayerDataManager.getPlayer(sender.getName());
-            if (senderPlayer == null || !senderPlayer.getTeamUUID().equals(team.getTeamUUID()) || !senderPlayer.getRank().hasPermission(RankPermissions.PROMOTE_MEMBER)) {
+            if (senderPlayer == null || !team.getTeamUUID().equals(TeamManager.getTeamUUIDOf(senderPlayer.getUuid())) || !senderPlayer.getRank().hasPermission(RankPermissions.PROMOTE_MEMBER)) {
                 sender.sendMessage("You don't have permission to promote members in this team.");
                 return;
             }
-            if (!team.getMembers().contains(requisitePlayer.getUuid())) {
+            if (!team.isMember(requisitePlayer.getUuid())) {
                 sender.sendMessage("Player " + args[1] + " is not in team " + teamName + ".");
                 return;
             }
@@ -481,7 +483,7 @@ public class TeamSubCommands {
                 sender.sendMessage("Player " + args[1] + " not found.");
                 return;
             }
-            if (!team.getMembers().contains(requisitePlayer.getUuid())) {
+            if (!team.isMember(requisitePlayer.getUuid())) {
                 sender.sendMessage("Player " + args[1] + " is not in team " + teamName + ".");
                 return;
             }
@@ -492,7 +494,7 @@ public class TeamSubCommands {
             }
             if (sender instanceof Player) {
                 RequisitePlayer senderPlayer = PlayerDataManager.getPlayer(sender.getName());
-                if (senderPlayer == null || !senderPlayer.getTeamUUID().equals(team.getTeamUUID()) || !senderPlayer.getRank().hasPermission(RankPermissions.SET_RANK)) {
+                if (senderPlayer == null || !team.getTeamUUID().equals(TeamManager.getTeamUUIDOf(senderPlayer.getUuid())) || !senderPlayer.getRank().hasPermission(RankPermissions.SET_RANK)) {
                     sender.sendMessage("You don't have permission to set ranks in this team.");
                     return;
                 }
@@ -554,15 +556,16 @@ public class TeamSubCommands {
                 sender.sendMessage("Team " + teamName + " not found.");
                 return;
             }
-            sender.sendMessage("Team: " + team.getName());
-            sender.sendMessage("Level: " + team.getTeamLevel().getLevel().getLevel());
-            sender.sendMessage("XP: " + team.getTeamLevel().getCurrentXp());
-            sender.sendMessage("Balance: " + team.getTeamBalance());
-            sender.sendMessage("Members (" + team.getMembers().size() + "):");
-            for (UUID uuid : team.getMembers()) {
-                RequisitePlayer player = team.getTeamPlayer(uuid);
-                if (player != null) {
-                    sender.sendMessage("- " + Bukkit.getOfflinePlayer(uuid).getName() + " (" + player.getRank().getDisplayName() + ")");
+            TeamView view = team.getView();
+            sender.sendMessage("Team: " + view.name());
+            sender.sendMessage("Level: " + view.level());
+            sender.sendMessage("XP: " + view.currentXp());
+            sender.sendMessage("Balance: " + view.balance());
+            sender.sendMessage("Members (" + view.memberCount() + "):");
+            for (UUID uuid : view.members()) {
+                Rank rank = RankRegistry.getRank(view.rankOf(uuid));
+                if (rank != null) {
+                    sender.sendMessage("- " + Bukkit.getOfflinePlayer(uuid).getName() + " (" + rank.getDisplayName() + ")");
                 }
             }
         }
@@ -593,7 +596,8 @@ public class TeamSubCommands {
             }
             sender.sendMessage("Teams (" + TeamManager.getTeamMap().size() + "):");
             for (Team team : TeamManager.getTeamMap().values()) {
-                sender.sendMessage("- " + team.getName() + " (Level: " + team.getTeamLevel().getLevel().getLevel() + ", Members: " + team.getMembers().size() + ")");
+                TeamView view = team.getView();
+                sender.sendMessage("- " + view.name() + " (Level: " + view.level() + ", Members: " + view.memberCount() + ")");
             }
         }
 
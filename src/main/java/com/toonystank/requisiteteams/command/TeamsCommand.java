@@ -39,6 +39,7 @@ public class TeamsCommand extends BaseCommand {
 
     private void registerSubCommands() {
         this.registerSubCommand("reload", new ReloadCommand());
+        this.registerSubCommand("admin", new AdminCommand());
         this.registerSubCommand("addxp", new TeamSubCommands.AddXpCommand());
         this.registerSubCommand("setxp", new TeamSubCommands.SetXpCommand());
         this.registerSubCommand("getxp", new TeamSubCommands.GetXpCommand());
@@ -0,0 +1,144 @@
+package com.toonystank.requisiteteams.data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resolves player names to UUIDs and back without blocking on a profile lookup.
+ * <p>
+ * Names are looked up in the online players, the persistent name index of the {@link PlayerStore} and the user cache
+ * of the server, in that order. The index is seeded from our own player records and the server's
+ * {@code usercache.json} at startup and updated when players join. A name found nowhere resolves to
+ * {@link Lookup#UNKNOWN} instead of asking Mojang.
+ */
+public class NameIndex {
+
+    private final PlayerStore store;
+
+    public NameIndex(PlayerStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Resolves a name to the UUID last seen with it.
+     *
+     * @param name The name, ignoring case.
+     * @return The resolved player, or {@link Lookup#UNKNOWN}.
+     */
+    public @NotNull Lookup resolve(@Nullable String name) {
+        if (name == null || name.isEmpty()) return Lookup.UNKNOWN;
+        Player online = Bukkit.getPlayerExact(name);
+        if (online != null) return new Lookup(online.getUniqueId(), online.getName());
+        PlayerStore.NameEntry entry = store.lookupName(name);
+        if (entry != null) return new Lookup(entry.uuid(), entry.name());
+        OfflinePlayer cached = Bukkit.getOfflinePlayerIfCached(name);
+        if (cached != null && cached.getName() != null) {
+            record(cached.getUniqueId(), cached.getName(), 0L);
+            return new Lookup(cached.getUniqueId(), cached.getName());
+        }
+        return Lookup.UNKNOWN;
+    }
+
+    /**
+     * Resolves a UUID to the name last seen with it, like {@link #resolve(String)} without asking Mojang or reading
+     * player files. The user cache of the server is part of the index once it is seeded.
+     *
+     * @param uuid The UUID of the player.
+     * @return The name, or null if the player is not known.
+     */
+    public @Nullable String nameOf(@Nullable UUID uuid) {
+        if (uuid == null) return null;
+        Player online = Bukkit.getPlayer(uuid);
+        if (online != null) return online.getName();
+        return store.lookupNameOf(uuid);
+    }
+
+    /**
+     * Records that a name belongs to a player, e.g. on join.
+     *
+     * @param uuid    The UUID of the player.
+     * @param name    The current name of the player.
+     * @param updated When the name was seen, an older entry never replaces a newer one.
+     */
+    public void record(UUID uuid, String name, long updated) {
+        store.saveNamesAsync(List.of(new PlayerStore.NameEntry(uuid, name, updated))).exceptionally(error -> {
+            MessageUtils.error("Failed to index name " + name + ": " + error.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Seeds the index from the stored players and the server's {@code usercache.json}. Runs on the writer thread
+     * of the store, only the user cache is read on the calling thread.
+     */
+    public void seed() {
+        store.seedNamesFromPlayers().whenComplete((added, error) -> {
+            if (error != null) {
+                MessageUtils.error("Failed to index stored player names: " + error.getMessage());
+            } else if (added > 0) {
+                MessageUtils.toConsole("Indexed " + added + " player names from stored players", true);
+            }
+        });
+        File userCache = new File(Bukkit.getWorldContainer(), "usercache.json");
+        if (!userCache.isFile()) return;
+        List<PlayerStore.NameEntry> entries = new ArrayList<>();
+        // usercache entries lose against names seen on join after the file was written
+        long updated = userCache.lastModified();
+        try (Reader reader = Files.newBufferedReader(userCache.toPath(), StandardCharsets.UTF_8)) {
+            JsonElement root = JsonParser.parseReader(reader);
+            if (!root.isJsonArray()) return;
+            JsonArray array = root.getAsJsonArray();
+            for (JsonElement element : array) {
+                if (!element.isJsonObject()) continue;
+                JsonObject object = element.getAsJsonObject();
+                if (!object.has("name") || !object.has("uuid")) continue;
+                try {
+                    entries.add(new PlayerStore.NameEntry(UUID.fromString(object.get("uuid").getAsString()), object.get("name").getAsString(), updated));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            MessageUtils.warning("Failed to read usercache.json: " + e.getMessage());
+            return;
+        }
+        store.saveNamesAsync(entries).whenComplete((ignored, error) -> {
+            if (error != null) {
+                MessageUtils.error("Failed to index usercache.json: " + error.getMessage());
+            } else {
+                MessageUtils.toConsole("Indexed " + entries.size() + " player names from usercache.json", true);
+            }
+        });
+    }
+
+    /**
+     * Result of a name lookup.
+     *
+     * @param uuid The UUID of the player, null if unknown.
+     * @param name The name with its indexed case, null if unknown.
+     */
+    public record Lookup(@Nullable UUID uuid, @Nullable String name) {
+
+        public static final Lookup UNKNOWN = new Lookup(null, null);
+
+        public boolean isKnown() {
+            return uuid != null && name != null;
+        }
+    }
+}
@@ -1,27 +1,64 @@
 package com.toonystank.requisiteteams.data;
 
-import com.toonystank.requisiteteams.utils.FileConfig;
+import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.utils.Handlers;
+import com.toonystank.requisiteteams.utils.MainConfig;
 import com.toonystank.requisiteteams.utils.MessageUtils;
+import lombok.Getter;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class PlayerDataManager extends FileConfig {
+/**
+ * Caches players and loads them from the indexed {@link PlayerStore} on demand.
+ * <p>
+ * The cache is bounded: offline players that are not in a team are evicted once they have not been accessed
+ * for the configured TTL, or least recently used first when the cache grows past its maximum size. Online players
+ * and team members are pinned, and changed players are saved before they are dropped.
+ * <p>
+ * Changes are written behind: changing a player only marks it dirty, and the dirty players are written in one
+ * batch every flush interval, when they quit, and on shutdown. Any number of changes between two flushes cost
+ * a single row update.
+ */
+public class PlayerDataManager {
+
+    private static final int EVICTION_INTERVAL_TICKS = 20 * 60;
 
     public static final Map<UUID, RequisitePlayer> playerUuidMap = new ConcurrentHashMap<>();
     private static final Map<String, UUID> playerNameMap = new ConcurrentHashMap<>();
     public static PlayerDataManager staticInstance;
 
+    @Getter
+    private final PlayerStore store;
+    @Getter
+    private final NameIndex nameIndex;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final AtomicBoolean evictionQueued = new AtomicBoolean();
+    private final AtomicBoolean flushInFlight = new AtomicBoolean();
+
     public PlayerDataManager() throws IOException {
-        super("playerdata.yml", "data", false, false);
         if (staticInstance != null) {
             MessageUtils.warning("Multiple instances of PlayerDataManager detected!");
         }
+        MainConfig mainConfig = RequisiteTeams.getInstance().getMainConfig();
+        this.maxSize = mainConfig != null ? Math.max(1, mainConfig.getPlayerCacheMaxSize()) : 5000;
+        this.ttlMillis = (mainConfig != null ? mainConfig.getPlayerCacheTtlSeconds() : 600) * 1000L;
+        int flushIntervalTicks = (mainConfig != null ? mainConfig.getPlayerFlushIntervalSeconds() : 60) * 20;
+        this.store = PlayerStore.open(mainConfig != null ? mainConfig.getStorageShards() : 1);
+        store.migrateLegacyFile();
+        this.nameIndex = new NameIndex(store);
         staticInstance = this;
+        Bukkit.getScheduler().runTaskAsynchronously(RequisiteTeams.getInstance(), nameIndex::seed);
+        Handlers.runTaskTimerAsync(EVICTION_INTERVAL_TICKS, this::evict);
+        // on the server thread, where players are changed, so every flush captures a consistent state
+        Handlers.runTaskTimer(flushIntervalTicks, this::flush);
     }
 
     public static boolean addPlayer(RequisitePlayer player, boolean bypassCheck) {
@@ -37,6 +74,9 @@ public class PlayerDataManager extends FileConfig {
         String name = Optional.of(player.getName())
                 .orElse("someone-(" + player.getUuid() + ")");
         playerNameMap.put(name.toLowerCase(), player.getUuid());
+        if (staticInstance != null && playerUuidMap.size() > staticInstance.maxSize) {
+            staticInstance.queueEviction();
+        }
         return true;
     }
 
@@ -50,6 +90,7 @@ public class PlayerDataManager extends FileConfig {
         if (uuid != null) {
             RequisitePlayer player = playerUuidMap.get(uuid);
             if (player != null && player.getUuid() != null && player.getName() != null) {
+                player.touch();
                 return player;
             }
         }
@@ -63,39 +104,268 @@ public class PlayerDataManager extends FileConfig {
         }
         RequisitePlayer player = playerUuidMap.get(uuid);
         if (player != null && player.getUuid() != null && player.getName() != null) {
+            player.touch();
             return player;
         }
         return loadPlayerData(uuid);
     }
 
+    /**
+     * Gets a player only if it is cached, never reading the store, so it is cheap enough for the server thread.
+     *
+     * @param uuid The UUID of the player.
+     * @return The cached player, or null if the player is not cached.
+     */
+    public static @Nullable RequisitePlayer getCachedPlayer(UUID uuid) {
+        if (uuid == null) return null;
+        RequisitePlayer player = playerUuidMap.get(uuid);
+        if (player == null || player.getName() == null) return null;
+        player.touch();
+        return player;
+    }
+
+    /**
+     * Gets a player by name only if it is cached, never reading the store or the name index.
+     *
+     * @param name The name of the player, ignoring case.
+     * @return The cached player, or null if the player is not cached.
+     */
+    public static @Nullable RequisitePlayer getCachedPlayer(String name) {
+        if (name == null) return null;
+        UUID uuid = playerNameMap.get(name.toLowerCase());
+        return uuid != null ? getCachedPlayer(uuid) : null;
+    }
+
     private static @Nullable RequisitePlayer loadPlayerData(Object identifier) {
         if (staticInstance == null) {
             MessageUtils.error("PlayerDataManager instance is null");
             return null;
         }
-        OfflinePlayer offlinePlayer = null;
+        PlayerStore.PlayerRecord record = null;
         String name = null;
         UUID uuid = null;
         if (identifier instanceof String) {
-            name = (String) identifier;
-            offlinePlayer = Bukkit.getOfflinePlayer(name);
-            uuid = offlinePlayer.getUniqueId();
+            // never Bukkit.getOfflinePlayer(name), it may block on a profile lookup
+            NameIndex.Lookup lookup = staticInstance.nameIndex.resolve((String) identifier);
+            if (!lookup.isKnown()) {
+                MessageUtils.debug("Unknown player name: " + identifier);
+                return null;
+            }
+            uuid = lookup.uuid();
+            name = lookup.name();
+            RequisitePlayer cached = playerUuidMap.get(uuid);
+            if (cached != null) {
+                cached.touch();
+                return cached;
+            }
+            record = staticInstance.store.load(uuid);
         } else if (identifier instanceof UUID) {
             uuid = (UUID) identifier;
-            offlinePlayer = Bukkit.getOfflinePlayer(uuid);
-            name = offlinePlayer.getName();
+            record = staticInstance.store.load(uuid);
+            name = record != null ? record.name() : null;
+            if (name == null) {
+                // never Bukkit.getOfflinePlayer(uuid), it reads a player file and is called off the server thread
+                name = staticInstance.nameIndex.nameOf(uuid);
+            }
         }
         if (uuid == null || name == null) {
             MessageUtils.debug("Could not resolve UUID or name for identifier: " + identifier);
             return null;
         }
-        double collectedXP = staticInstance.getDouble(uuid + ".collectedXP");
-        RequisitePlayer player = new RequisitePlayer(offlinePlayer, collectedXP);
+        RequisitePlayer player = new RequisitePlayer(name, uuid, record != null ? record.collectedXp() : 0);
         addPlayer(player, true);
+        if (record == null || !name.equals(record.name())) {
+            // first time this player is seen or the name changed, store it right away
+            savePlayer(player);
+        }
         MessageUtils.debug("Loaded player data for: " + uuid);
         return player;
     }
 
+    /**
+     * Loads the given players into the cache in bulk, e.g. the members of every team at startup.
+     *
+     * @param uuids The players to load, players that are already cached are skipped.
+     */
+    public static void preload(Collection<UUID> uuids) {
+        if (staticInstance == null) return;
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            if (!playerUuidMap.containsKey(uuid)) missing.add(uuid);
+        }
+        if (missing.isEmpty()) return;
+        int loaded = 0;
+        for (PlayerStore.PlayerRecord record : staticInstance.store.loadAll(missing)) {
+            if (record.name() == null) continue;
+            addPlayer(new RequisitePlayer(record.name(), record.uuid(), record.collectedXp()), true);
+            loaded++;
+        }
+        MessageUtils.debug("Preloaded " + loaded + " of " + missing.size() + " players");
+    }
+
+    /**
+     * Finds which of the given players exist, in the cache or in the store. The store is read on its reader
+     * threads, the calling thread waits for the result.
+     *
+     * @param uuids The players to look up.
+     * @return The players that are known.
+     * @throws IOException If the store cannot be read, so a player is never reported missing because of a read error.
+     */
+    public static Set<UUID> findKnownPlayers(Collection<UUID> uuids) throws IOException {
+        Set<UUID> known = new HashSet<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            if (playerUuidMap.containsKey(uuid)) known.add(uuid);
+            else missing.add(uuid);
+        }
+        if (staticInstance == null || missing.isEmpty()) return known;
+        try {
+            known.addAll(staticInstance.store.findStored(missing).join());
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Failed to read players: " + cause.getMessage(), cause);
+        }
+        return known;
+    }
+
+    /**
+     * Saves a player to the store on its writer thread.
+     *
+     * @param player The player to save.
+     */
+    public static void savePlayer(RequisitePlayer player) {
+        if (staticInstance == null) return;
+        staticInstance.save(List.of(player)).exceptionally(error -> {
+            MessageUtils.error("Failed to save player " + player.getName() + ": " + error.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Saves every cached player in one transaction.
+     *
+     * @return Completes when the players were written.
+     */
+    public CompletableFuture<Void> saveAllPlayers() {
+        return save(new ArrayList<>(playerUuidMap.values()));
+    }
+
+    /**
+     * Saves the cached players that changed since their last save in one transaction.
+     *
+     * @return Completes when the players were written.
+     */
+    public CompletableFuture<Void> saveDirtyPlayers() {
+        List<RequisitePlayer> dirty = new ArrayList<>();
+        for (RequisitePlayer player : playerUuidMap.values()) {
+            if (player.isDirty()) dirty.add(player);
+        }
+        if (dirty.isEmpty()) return CompletableFuture.completedFuture(null);
+        return save(dirty);
+    }
+
+    /**
+     * Writes the dirty players in the background. Skipped while the previous flush is still being written, the
+     * players stay dirty and are picked up by the next one.
+     */
+    public void flush() {
+        if (RequisiteTeams.isShuttingDown() || !flushInFlight.compareAndSet(false, true)) return;
+        long start = System.currentTimeMillis();
+        List<RequisitePlayer> dirty = new ArrayList<>();
+        for (RequisitePlayer player : playerUuidMap.values()) {
+            if (player.isDirty()) dirty.add(player);
+        }
+        if (dirty.isEmpty()) {
+            flushInFlight.set(false);
+            return;
+        }
+        save(dirty).whenComplete((result, error) -> {
+            flushInFlight.set(false);
+            if (error != null) {
+                MessageUtils.error("Failed to flush " + dirty.size() + " players, retrying on the next flush: " + error.getMessage());
+                return;
+            }
+            MessageUtils.debug("Flushed " + dirty.size() + " changed players in " + (System.currentTimeMillis() - start) + " ms");
+        });
+    }
+
+    private CompletableFuture<Void> save(Collection<RequisitePlayer> players) {
+        List<PlayerStore.PlayerRecord> records = new ArrayList<>(players.size());
+        long[] modCounts = new long[players.size()];
+        int i = 0;
+        for (RequisitePlayer player : players) {
+            modCounts[i++] = player.getModCount();
+            records.add(new PlayerStore.PlayerRecord(player.getUuid(), player.getName(), player.getCollectedXP()));
+        }
+        return store.saveAllAsync(records).thenRun(() -> {
+            int j = 0;
+            for (RequisitePlayer player : players) {
+                player.markSaved(modCounts[j++]);
+            }
+        });
+    }
+
+    private void queueEviction() {
+        if (!evictionQueued.compareAndSet(false, true)) return;
+        Bukkit.getScheduler().runTaskAsynchronously(RequisiteTeams.getInstance(), () -> {
+            try {
+                evict();
+            } finally {
+                evictionQueued.set(false);
+            }
+        });
+    }
+
+    /**
+     * Drops expired offline players and, while the cache is over its maximum size, the least recently used ones.
+     * Changed players are saved first and only dropped if they did not change again in the meantime.
+     */
+    public void evict() {
+        long now = System.currentTimeMillis();
+        List<RequisitePlayer> candidates = new ArrayList<>();
+        for (RequisitePlayer player : playerUuidMap.values()) {
+            if (!isPinned(player)) candidates.add(player);
+        }
+        candidates.sort(Comparator.comparingLong(RequisitePlayer::getLastAccess));
+        int excess = playerUuidMap.size() - maxSize;
+        List<RequisitePlayer> clean = new ArrayList<>();
+        List<RequisitePlayer> dirty = new ArrayList<>();
+        for (RequisitePlayer player : candidates) {
+            boolean expired = now - player.getLastAccess() > ttlMillis;
+            // oldest first, so once a player is neither expired nor needed to shrink the cache, neither are the rest
+            if (!expired && excess <= 0) break;
+            (player.isDirty() ? dirty : clean).add(player);
+            excess--;
+        }
+        clean.forEach(PlayerDataManager::remove);
+        if (!dirty.isEmpty()) {
+            save(dirty).thenRun(() -> dirty.forEach(PlayerDataManager::remove)).exceptionally(error -> {
+                MessageUtils.error("Failed to save evicted players, keeping them cached: " + error.getMessage());
+                return null;
+            });
+        }
+        if (!clean.isEmpty() || !dirty.isEmpty()) {
+            MessageUtils.debug("Evicted " + (clean.size() + dirty.size()) + " players from the cache (" + dirty.size() + " saved first), " + playerUuidMap.size() + " cached");
+        }
+    }
+
+    private static boolean isPinned(RequisitePlayer player) {
+        // team members hold their rank in the cached object, so they stay until they leave the team
+        return player.getTeamUUID() != null || Bukkit.getPlayer(player.getUuid()) != null;
+    }
+
+    private static void remove(RequisitePlayer player) {
+        if (player.isDirty() || isPinned(player)) return;
+        if (playerUuidMap.remove(player.getUuid(), player)) {
+            playerNameMap.remove(player.getName().toLowerCase(), player.getUuid());
+        }
+    }
+
+    public void close() {
+        store.close();
+        if (staticInstance == this) staticInstance = null;
+    }
+
     public static List<RequisitePlayer> getPlayers() {
         return new ArrayList<>(playerUuidMap.values());
     }
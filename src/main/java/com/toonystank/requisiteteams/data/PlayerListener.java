@@ -0,0 +1,26 @@
+package com.toonystank.requisiteteams.data;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+public final class PlayerListener implements Listener {
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        PlayerDataManager manager = PlayerDataManager.staticInstance;
+        if (manager == null) return;
+        manager.getNameIndex().record(player.getUniqueId(), player.getName(), System.currentTimeMillis());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        // write the player now, it may be evicted from the cache once it is offline
+        RequisitePlayer player = PlayerDataManager.playerUuidMap.get(event.getPlayer().getUniqueId());
+        if (player != null && player.isDirty()) PlayerDataManager.savePlayer(player);
+    }
+}
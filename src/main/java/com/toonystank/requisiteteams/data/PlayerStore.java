@@ -0,0 +1,583 @@
+package com.toonystank.requisiteteams.data;
+
+import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.utils.AsyncSQLManager;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import com.toonystank.requisiteteams.utils.SQLManager;
+import com.toonystank.requisiteteams.utils.ShardLayout;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores player data in an indexed SQLite table, one row per player keyed by UUID with an index on the lower-case name.
+ * Looking up or saving a player only touches that player's row. Writes go through the writer thread of
+ * {@link AsyncSQLManager}, lookups are single indexed reads on the calling thread.
+ * <p>
+ * The players can be split over several database files by UUID ({@code players-0.db} ...), each with its own
+ * writer thread, so a batch spanning many players is written in parallel. The name index always lives in the
+ * first file.
+ */
+public class PlayerStore {
+
+    private static final String BASE_NAME = "players";
+    private static final String SELECT_BY_UUID = "SELECT uuid, name, collected_xp FROM players WHERE uuid = ?";
+    private static final String SELECT_BY_NAME = "SELECT uuid, name, collected_xp FROM players WHERE name_lower = ? LIMIT 1";
+    private static final String UPSERT = "INSERT INTO players (uuid, name, name_lower, collected_xp) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, name_lower = excluded.name_lower, collected_xp = excluded.collected_xp";
+    private static final String SELECT_NAME = "SELECT uuid, name FROM player_names WHERE name_lower = ?";
+    private static final String SELECT_NAME_OF = "SELECT name FROM player_names WHERE uuid = ? ORDER BY updated DESC LIMIT 1";
+    private static final String UPSERT_NAME = "INSERT INTO player_names (name_lower, uuid, name, updated) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT(name_lower) DO UPDATE SET uuid = excluded.uuid, name = excluded.name, updated = excluded.updated " +
+            "WHERE excluded.updated >= player_names.updated";
+    private static final String INSERT_NAME_IF_ABSENT = "INSERT OR IGNORE INTO player_names (name_lower, uuid, name, updated) VALUES (?, ?, ?, ?)";
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    private static final int LOAD_CHUNK_SIZE = 500;
+
+    private final Shard[] shards;
+
+    public PlayerStore() throws IOException {
+        this(1, "data");
+    }
+
+    /**
+     * @param shardCount The number of database files.
+     * @param folder     The folder of the files, relative to the data folder of the plugin.
+     */
+    public PlayerStore(int shardCount, String folder) throws IOException {
+        this.shards = new Shard[shardCount];
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                shards[shard] = new Shard(ShardLayout.fileName(BASE_NAME, shard, shardCount), folder);
+            }
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Failed to open player database: " + e.getMessage(), e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the player store with the given number of shards. If the players were written with a different number
+     * of shards they are redistributed first; the old files are kept in {@code data/backup}.
+     *
+     * @param shardCount The number of shards, 1 for a single {@code players.db}.
+     * @return The store.
+     */
+    public static PlayerStore open(int shardCount) throws IOException {
+        shardCount = Math.max(1, shardCount);
+        File folder = new File(RequisiteTeams.getInstance().getDataFolder(), "data");
+        ShardLayout.recover(folder, new File(RequisiteTeams.getInstance().getDataFolder(), ShardLayout.STAGING_FOLDER), BASE_NAME);
+        int storedShards = ShardLayout.detect(folder, BASE_NAME);
+        if (storedShards > 0 && storedShards != shardCount) {
+            reshard(folder, storedShards, shardCount);
+        }
+        return new PlayerStore(shardCount, "data");
+    }
+
+    private static void reshard(File folder, int fromShards, int toShards) throws IOException {
+        MessageUtils.toConsole("Resharding players from " + fromShards + " to " + toShards + " shards...", false);
+        long start = System.currentTimeMillis();
+        File staging = new File(RequisiteTeams.getInstance().getDataFolder(), ShardLayout.STAGING_FOLDER);
+        ShardLayout.clearStaging(staging, BASE_NAME);
+        int copied = 0;
+        PlayerStore source = new PlayerStore(fromShards, "data");
+        try {
+            PlayerStore target = new PlayerStore(toShards, ShardLayout.STAGING_FOLDER);
+            try {
+                for (Shard shard : source.shards) {
+                    copied += shard.copyPlayersTo(target);
+                }
+                source.indexShard().copyNamesTo(target.indexShard());
+            } finally {
+                target.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to reshard players: " + e.getMessage(), e);
+        } finally {
+            source.close();
+        }
+        ShardLayout.replace(folder, staging, BASE_NAME, fromShards, toShards);
+        MessageUtils.toConsole("Resharded " + copied + " players in " + (System.currentTimeMillis() - start) + " ms", false);
+    }
+
+    private Shard shardOf(UUID uuid) {
+        return shards[ShardLayout.shardOf(uuid, shards.length)];
+    }
+
+    private Shard indexShard() {
+        return shards[0];
+    }
+
+    /**
+     * Looks up a player by UUID.
+     *
+     * @param uuid The UUID of the player.
+     * @return The stored player, or null if the player was never saved.
+     */
+    public @Nullable PlayerRecord load(UUID uuid) {
+        return shardOf(uuid).query(SELECT_BY_UUID, uuid.toString());
+    }
+
+    /**
+     * Looks up a player by name, ignoring case.
+     *
+     * @param name The name of the player.
+     * @return The stored player, or null if no player with that name was saved.
+     */
+    public @Nullable PlayerRecord loadByName(String name) {
+        for (Shard shard : shards) {
+            PlayerRecord record = shard.query(SELECT_BY_NAME, name.toLowerCase(Locale.ROOT));
+            if (record != null) return record;
+        }
+        return null;
+    }
+
+    /**
+     * Looks up many players by UUID with a few {@code IN} queries.
+     *
+     * @param uuids The UUIDs of the players.
+     * @return The stored players, players that were never saved are left out.
+     */
+    public List<PlayerRecord> loadAll(Collection<UUID> uuids) {
+        List<PlayerRecord> records = new ArrayList<>(uuids.size());
+        List<List<UUID>> chunks = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            chunks.add(new ArrayList<>(LOAD_CHUNK_SIZE));
+        }
+        for (UUID uuid : uuids) {
+            int shard = ShardLayout.shardOf(uuid, shards.length);
+            List<UUID> chunk = chunks.get(shard);
+            chunk.add(uuid);
+            if (chunk.size() == LOAD_CHUNK_SIZE) {
+                shards[shard].loadChunk(chunk, records);
+                chunk.clear();
+            }
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (!chunks.get(shard).isEmpty()) shards[shard].loadChunk(chunks.get(shard), records);
+        }
+        return records;
+    }
+
+    /**
+     * Finds which of the given players are stored, with {@code IN} queries on the reader thread of every shard.
+     * The reader connections are private to their thread, so lookups of different callers never share a statement.
+     *
+     * @param uuids The UUIDs of the players.
+     * @return Completes with the stored players, or exceptionally if a shard cannot be read.
+     */
+    public CompletableFuture<Set<UUID>> findStored(Collection<UUID> uuids) {
+        List<CompletableFuture<List<UUID>>> reads = new ArrayList<>();
+        List<List<UUID>> chunks = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            chunks.add(new ArrayList<>(LOAD_CHUNK_SIZE));
+        }
+        for (UUID uuid : uuids) {
+            int shard = ShardLayout.shardOf(uuid, shards.length);
+            List<UUID> chunk = chunks.get(shard);
+            chunk.add(uuid);
+            if (chunk.size() == LOAD_CHUNK_SIZE) {
+                reads.add(shards[shard].findStored(List.copyOf(chunk)));
+                chunk.clear();
+            }
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (!chunks.get(shard).isEmpty()) reads.add(shards[shard].findStored(List.copyOf(chunks.get(shard))));
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(done -> {
+            Set<UUID> stored = new HashSet<>();
+            for (CompletableFuture<List<UUID>> read : reads) {
+                stored.addAll(read.join());
+            }
+            return stored;
+        });
+    }
+
+    /**
+     * Saves a player on the writer thread.
+     *
+     * @param record The player to save.
+     * @return Completes when the player was written.
+     */
+    public CompletableFuture<Void> saveAsync(PlayerRecord record) {
+        return saveAllAsync(List.of(record));
+    }
+
+    /**
+     * Saves many players, one transaction per shard on the writer thread of that shard.
+     *
+     * @param records The players to save.
+     * @return Completes when every transaction committed.
+     */
+    public CompletableFuture<Void> saveAllAsync(Collection<PlayerRecord> records) {
+        if (records.isEmpty()) return CompletableFuture.completedFuture(null);
+        if (shards.length == 1) return shards[0].async.batchAsync(() -> shards[0].write(records));
+        List<List<PlayerRecord>> parts = split(records);
+        List<CompletableFuture<Void>> writes = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            List<PlayerRecord> part = parts.get(shard);
+            if (part.isEmpty()) continue;
+            Shard target = shards[shard];
+            writes.add(target.async.batchAsync(() -> target.write(part)));
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+    }
+
+    private List<List<PlayerRecord>> split(Collection<PlayerRecord> records) {
+        List<List<PlayerRecord>> parts = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            parts.add(new ArrayList<>());
+        }
+        for (PlayerRecord record : records) {
+            parts.get(ShardLayout.shardOf(record.uuid(), shards.length)).add(record);
+        }
+        return parts;
+    }
+
+    /**
+     * Looks up the UUID last seen with a name in the name index.
+     *
+     * @param name The name, ignoring case.
+     * @return The indexed entry, or null if the name is not indexed.
+     */
+    public @Nullable NameEntry lookupName(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        try {
+            PreparedStatement pstmt = indexShard().sqlManager.prepare(SELECT_NAME);
+            synchronized (pstmt) {
+                pstmt.setString(1, key);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) return null;
+                    return new NameEntry(UUID.fromString(rs.getString(1)), rs.getString(2), 0L);
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            MessageUtils.error("Failed to look up player name " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the name last seen with a UUID in the name index.
+     *
+     * @param uuid The UUID of the player.
+     * @return The most recent indexed name, or null if the player is not indexed.
+     */
+    public @Nullable String lookupNameOf(UUID uuid) {
+        try {
+            PreparedStatement pstmt = indexShard().sqlManager.prepare(SELECT_NAME_OF);
+            synchronized (pstmt) {
+                pstmt.setString(1, uuid.toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            }
+        } catch (SQLException e) {
+            MessageUtils.error("Failed to look up the name of player " + uuid + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds names to the name index on the writer thread. An entry only replaces an indexed name if it is at least as recent.
+     *
+     * @param entries The names to index.
+     * @return Completes when the names were written.
+     */
+    public CompletableFuture<Void> saveNamesAsync(Collection<NameEntry> entries) {
+        if (entries.isEmpty()) return CompletableFuture.completedFuture(null);
+        Shard index = indexShard();
+        return index.async.batchAsync(() -> index.writeNames(UPSERT_NAME, entries));
+    }
+
+    /**
+     * Indexes the names of stored players that are not indexed yet, on the writer thread.
+     *
+     * @return Completes with the number of names added.
+     */
+    public CompletableFuture<Integer> seedNamesFromPlayers() {
+        Shard index = indexShard();
+        CompletableFuture<Integer> seeded = index.async.writeAsync(() -> {
+            PreparedStatement pstmt = index.sqlManager.prepare("INSERT OR IGNORE INTO player_names (name_lower, uuid, name, updated) " +
+                    "SELECT name_lower, uuid, name, 0 FROM players WHERE name_lower IS NOT NULL");
+            synchronized (pstmt) {
+                return pstmt.executeUpdate();
+            }
+        });
+        for (int shard = 1; shard < shards.length; shard++) {
+            // players of the other shards are read there and indexed on the writer of the first shard
+            CompletableFuture<List<NameEntry>> names = shards[shard].async.queryAsync(
+                    "SELECT uuid, name FROM players WHERE name_lower IS NOT NULL", rs -> {
+                        List<NameEntry> entries = new ArrayList<>();
+                        while (rs.next()) {
+                            entries.add(new NameEntry(UUID.fromString(rs.getString(1)), rs.getString(2), 0L));
+                        }
+                        return entries;
+                    });
+            seeded = seeded.thenCompose(added -> names.thenCompose(entries ->
+                    index.async.writeAsync(() -> added + index.writeNames(INSERT_NAME_IF_ABSENT, entries))));
+        }
+        return seeded;
+    }
+
+    /**
+     * Imports {@code data/playerdata.yml} written by older versions, then renames it so the import runs once.
+     */
+    public void migrateLegacyFile() {
+        File legacyFile = new File(RequisiteTeams.getInstance().getDataFolder(), "data" + File.separator + "playerdata.yml");
+        if (!legacyFile.exists()) return;
+        long start = System.currentTimeMillis();
+        YamlConfiguration legacy = YamlConfiguration.loadConfiguration(legacyFile);
+        List<PlayerRecord> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+        int migrated = 0;
+        try {
+            for (String key : legacy.getKeys(false)) {
+                UUID uuid;
+                try {
+                    uuid = UUID.fromString(key);
+                } catch (IllegalArgumentException e) {
+                    MessageUtils.toConsole("Skipping invalid UUID in playerdata.yml: " + key, true);
+                    continue;
+                }
+                // playerdata.yml holds no names; looking each one up here would read a player file per row during
+                // startup, the name is resolved when the player is first loaded instead
+                batch.add(new PlayerRecord(uuid, null, legacy.getDouble(key + ".collectedXP")));
+                if (batch.size() >= MIGRATION_BATCH_SIZE) {
+                    writeNow(batch);
+                    migrated += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeNow(batch);
+                migrated += batch.size();
+            }
+        } catch (SQLException e) {
+            MessageUtils.error("Failed to migrate playerdata.yml, it will be retried on the next start: " + e.getMessage());
+            return;
+        }
+        File migratedFile = new File(legacyFile.getParentFile(), "playerdata.yml.migrated");
+        if (!legacyFile.renameTo(migratedFile)) {
+            MessageUtils.warning("Could not rename " + legacyFile.getName() + " after migrating it");
+        }
+        MessageUtils.toConsole("Migrated " + migrated + " players from playerdata.yml in " + (System.currentTimeMillis() - start) + " ms", false);
+    }
+
+    /**
+     * Writes players on the calling thread, one transaction per shard. Only used before the store is in use.
+     */
+    private void writeNow(Collection<PlayerRecord> records) throws SQLException {
+        List<List<PlayerRecord>> parts = split(records);
+        for (int shard = 0; shard < shards.length; shard++) {
+            List<PlayerRecord> part = parts.get(shard);
+            if (part.isEmpty()) continue;
+            Shard target = shards[shard];
+            target.sqlManager.transaction(() -> target.write(part));
+        }
+    }
+
+    public void close() {
+        for (Shard shard : shards) {
+            if (shard != null) shard.close();
+        }
+    }
+
+    /**
+     * One database file with its writer thread.
+     */
+    private static final class Shard {
+
+        private final SQLManager sqlManager;
+        private final AsyncSQLManager async;
+
+        private Shard(String fileName, String folder) throws SQLException, IOException {
+            this.sqlManager = new SQLManager(fileName, folder, false, false);
+            sqlManager.execute("CREATE TABLE IF NOT EXISTS players (" +
+                    "uuid TEXT PRIMARY KEY, name TEXT, name_lower TEXT, collected_xp REAL NOT NULL DEFAULT 0)");
+            sqlManager.execute("CREATE INDEX IF NOT EXISTS idx_players_name_lower ON players (name_lower)");
+            sqlManager.execute("CREATE TABLE IF NOT EXISTS player_names (" +
+                    "name_lower TEXT PRIMARY KEY, uuid TEXT NOT NULL, name TEXT NOT NULL, updated INTEGER NOT NULL DEFAULT 0)");
+            sqlManager.execute("CREATE INDEX IF NOT EXISTS idx_player_names_uuid ON player_names (uuid)");
+            this.async = new AsyncSQLManager(sqlManager, 1);
+        }
+
+        private void loadChunk(List<UUID> chunk, List<PlayerRecord> records) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try {
+                PreparedStatement pstmt = sqlManager.prepare("SELECT uuid, name, collected_xp FROM players WHERE uuid IN (" + placeholders + ")");
+                synchronized (pstmt) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 1, chunk.get(i).toString());
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            records.add(new PlayerRecord(UUID.fromString(rs.getString(1)), rs.getString(2), rs.getDouble(3)));
+                        }
+                    }
+                }
+            } catch (SQLException | IllegalArgumentException e) {
+                MessageUtils.error("Failed to read " + chunk.size() + " players from the database: " + e.getMessage());
+            }
+        }
+
+        private CompletableFuture<List<UUID>> findStored(List<UUID> chunk) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            Object[] params = new Object[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                params[i] = chunk.get(i).toString();
+            }
+            return async.queryAsync("SELECT uuid FROM players WHERE uuid IN (" + placeholders + ")", rs -> {
+                List<UUID> stored = new ArrayList<>(chunk.size());
+                while (rs.next()) {
+                    stored.add(UUID.fromString(rs.getString(1)));
+                }
+                return stored;
+            }, params);
+        }
+
+        private @Nullable PlayerRecord query(String sql, String key) {
+            try {
+                PreparedStatement pstmt = sqlManager.prepare(sql);
+                synchronized (pstmt) {
+                    pstmt.setString(1, key);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) return null;
+                        return new PlayerRecord(UUID.fromString(rs.getString(1)), rs.getString(2), rs.getDouble(3));
+                    }
+                }
+            } catch (SQLException | IllegalArgumentException e) {
+                MessageUtils.error("Failed to read player " + key + " from the database: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private void write(Collection<PlayerRecord> records) throws SQLException {
+            PreparedStatement pstmt = sqlManager.prepare(UPSERT);
+            synchronized (pstmt) {
+                try {
+                    for (PlayerRecord record : records) {
+                        pstmt.setString(1, record.uuid().toString());
+                        pstmt.setString(2, record.name());
+                        pstmt.setString(3, record.name() != null ? record.name().toLowerCase(Locale.ROOT) : null);
+                        pstmt.setDouble(4, record.collectedXp());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                } catch (SQLException e) {
+                    pstmt.clearBatch();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * @return The number of names written.
+         */
+        private int writeNames(String sql, Collection<NameEntry> entries) throws SQLException {
+            PreparedStatement pstmt = sqlManager.prepare(sql);
+            synchronized (pstmt) {
+                try {
+                    for (NameEntry entry : entries) {
+                        pstmt.setString(1, entry.name().toLowerCase(Locale.ROOT));
+                        pstmt.setString(2, entry.uuid().toString());
+                        pstmt.setString(3, entry.name());
+                        pstmt.setLong(4, entry.updated());
+                        pstmt.addBatch();
+                    }
+                    int written = 0;
+                    for (int count : pstmt.executeBatch()) {
+                        if (count > 0) written++;
+                    }
+                    return written;
+                } catch (SQLException e) {
+                    pstmt.clearBatch();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Copies every player of this shard into the store, in batches.
+         *
+         * @return The number of players copied.
+         */
+        private int copyPlayersTo(PlayerStore target) throws SQLException {
+            int copied = 0;
+            List<PlayerRecord> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+            try (PreparedStatement pstmt = sqlManager.getConnection().prepareStatement("SELECT uuid, name, collected_xp FROM players");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    batch.add(new PlayerRecord(UUID.fromString(rs.getString(1)), rs.getString(2), rs.getDouble(3)));
+                    if (batch.size() == MIGRATION_BATCH_SIZE) {
+                        target.writeNow(batch);
+                        copied += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                target.writeNow(batch);
+                copied += batch.size();
+            }
+            return copied;
+        }
+
+        private void copyNamesTo(Shard target) throws SQLException {
+            List<NameEntry> entries = new ArrayList<>();
+            try (PreparedStatement pstmt = sqlManager.getConnection().prepareStatement("SELECT uuid, name, updated FROM player_names");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new NameEntry(UUID.fromString(rs.getString(1)), rs.getString(2), rs.getLong(3)));
+                }
+            }
+            target.sqlManager.transaction(() -> target.writeNames(UPSERT_NAME, entries));
+        }
+
+        private void close() {
+            async.close(30);
+            sqlManager.clearCaches();
+            try {
+                if (sqlManager.getConnection() != null) sqlManager.getConnection().close();
+            } catch (SQLException e) {
+                MessageUtils.warning("Failed to close player database: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A stored player.
+     *
+     * @param uuid        The UUID of the player.
+     * @param name        The last known name, may be null for players imported without one.
+     * @param collectedXp The XP the player collected.
+     */
+    public record PlayerRecord(UUID uuid, @Nullable String name, double collectedXp) {
+    }
+
+    /**
+     * An entry of the name index.
+     *
+     * @param uuid    The UUID last seen with the name.
+     * @param name    The name with its original case.
+     * @param updated When the name was seen in epoch milliseconds, newer entries win.
+     */
+    public record NameEntry(UUID uuid, String name, long updated) {
+    }
+}
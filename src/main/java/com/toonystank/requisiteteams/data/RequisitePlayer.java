@@ -6,6 +6,7 @@ import com.toonystank.requisiteteams.team.Team;
 import com.toonystank.requisiteteams.team.TeamManager;
 import com.toonystank.requisiteteams.team.rank.Rank;
 import com.toonystank.requisiteteams.utils.MessageUtils;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -17,6 +18,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Getter
 public class RequisitePlayer {
@@ -33,6 +35,12 @@ public class RequisitePlayer {
 
     public Map<UUID, BaseGUI> guiMap = new HashMap<>();
 
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong modCount = new AtomicLong();
+    @Getter(AccessLevel.NONE)
+    private volatile long savedModCount;
+    private volatile long lastAccess = System.currentTimeMillis();
+
     public RequisitePlayer(@NotNull String name, @NotNull UUID uuid, double collectedXP) {
         this.name = name;
         this.uuid = uuid;
@@ -59,16 +67,66 @@ public class RequisitePlayer {
     public void setPlayerTeam(UUID teamUUID, Rank rank) {
         if (this.teamUUID != null && this.teamUUID.equals(teamUUID)) {
             MessageUtils.debug("Player " + name + " is already on team " + teamUUID);
+            if (rank != null && !rank.equals(this.rank)) {
+                this.rank = rank;
+                Team team = TeamManager.getTeam(teamUUID);
+                if (team != null) team.setMemberRank(uuid, rank);
+            }
             return;
         }
         if (this.teamUUID != null && !this.teamUUID.equals(teamUUID)) {
-            Team team = TeamManager.getTeam(teamUUID);
+            Team team = TeamManager.getTeam(this.teamUUID);
             if (team != null) team.removeFromTeam(this);
         }
         this.teamUUID = teamUUID;
         this.rank = rank;
     }
 
+    /**
+     * Switches to the reloaded definition of the current rank, which is not a change of the team.
+     *
+     * @param rank The rank with the same name from the reloaded registry.
+     */
+    public void rebindRank(Rank rank) {
+        this.rank = rank;
+    }
+
+    /**
+     * Marks the player as changed so it is saved before it can be evicted from the cache.
+     */
+    public void markDirty() {
+        modCount.incrementAndGet();
+    }
+
+    /**
+     * @return true if the player changed since it was last saved or loaded.
+     */
+    public boolean isDirty() {
+        return modCount.get() != savedModCount;
+    }
+
+    public long getModCount() {
+        return modCount.get();
+    }
+
+    /**
+     * Records a successful save. Changes made after {@code savedModCount} was read keep the player dirty.
+     *
+     * @param savedModCount The change counter read before the player state was captured.
+     */
+    public void markSaved(long savedModCount) {
+        if (savedModCount > this.savedModCount) {
+            this.savedModCount = savedModCount;
+        }
+    }
+
+    /**
+     * Records a cache access, used to pick which offline players to evict first.
+     */
+    public void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
     @NotNull
     public OfflinePlayer getPlayer() {
         OfflinePlayer offlinePlayer = RequisiteTeams.getInstance().getServer().getPlayer(uuid);
@@ -91,6 +149,7 @@ public class RequisitePlayer {
 
         // Add the player's portion to collectedXP
         this.collectedXP += xpToAdd;
+        markDirty();
 
         // Return the amount added to the player's collectedXP
         return xpToAdd;
@@ -36,7 +36,13 @@ public class GuiData extends FileConfig {
     public GuiData(String fileName, String version, String defaultTheme) throws IOException {
         super(fileName, "gui", false, true);
         MessageUtils.toConsole("Loading GUI: " + fileName, false);
-        this.dataHolder = new DataHolder(this, defaultTheme);
+        // defaults written while parsing the sections are saved once
+        beginBatch();
+        try {
+            this.dataHolder = new DataHolder(this, defaultTheme);
+        } finally {
+            commitBatch();
+        }
         this.row = dataHolder.getDataSection().getRows();
         this.bedrockColorReplacement = "§7"; // Default replacement, adjust as needed
         setArguments();
@@ -38,7 +38,8 @@ public class LevelData extends FileConfig {
         if (levelMap.isEmpty()) {
             MessageUtils.toConsole("Level map is empty, loading levels...", false);
             try {
-                new LevelData().loadLevels();
+                LevelData levelData = new LevelData();
+                levelData.batch(levelData::loadLevels);
             } catch (IOException e) {
                 MessageUtils.toConsole("Failed to load levels: " + e.getMessage(), true);
                 return null;
@@ -184,6 +185,6 @@ public class LevelData extends FileConfig {
     @Override
     public void reload() throws IOException {
         super.reload();
-        loadLevels();
+        batch(this::loadLevels);
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import com.toonystank.requisiteteams.level.LevelData;
 import com.toonystank.requisiteteams.team.Leaderboard;
 import com.toonystank.requisiteteams.team.Team;
 import com.toonystank.requisiteteams.team.TeamManager;
+import com.toonystank.requisiteteams.team.TeamView;
 import com.toonystank.requisiteteams.team.rank.Rank;
 import com.toonystank.requisiteteams.team.rank.RankRegistry;
 import com.toonystank.requisiteteams.utils.LanguageConfig;
@@ -238,6 +239,8 @@ public class PlaceholderRequest {
             String teamName = args[0];
             if (!teamManager.isTeamExists(teamName)) return "null";
             Team team = TeamManager.getTeam(teamName);
+            if (team == null) return "null";
+            TeamView view = team.getView();
 
             String[] placeholderParts = args[1].split(":");
             String mainPlaceholder = placeholderParts[0].toLowerCase();
@@ -245,28 +248,30 @@ public class PlaceholderRequest {
 
             switch (mainPlaceholder) {
                 case "name" -> {
-                    return team.getName();
+                    return view.name();
                 }
                 case "uuid" -> {
-                    return team.getTeamUUID().toString();
+                    return view.teamUUID().toString();
                 }
                 case "members" -> {
-                    return String.valueOf(team.getMembers().size());
+                    return String.valueOf(view.memberCount());
                 }
                 case "level" -> {
-                    return String.valueOf(team.getTeamLevel().getLevel().getLevel());
+                    return String.valueOf(view.level());
                 }
                 case "xp" -> {
-                    return String.format("%.2f", team.getTeamLevel().getCurrentXp());
+                    return String.format("%.2f", view.currentXp());
                 }
                 case "balance" -> {
-                    return String.valueOf(team.getTeamBalance());
+                    return String.valueOf(view.balance());
                 }
                 case "owner" -> {
                     if (!subPlaceholder.equals("name")) return "null";
-                    RequisitePlayer owner = team.getPlayersByRank(RankRegistry.getOwnerRank())
+                    Rank ownerRank = RankRegistry.getOwnerRank();
+                    RequisitePlayer owner = ownerRank == null ? null : view.membersWithRank(ownerRank.getName())
                             .stream()
                             .findFirst()
+                            .map(PlayerDataManager::getPlayer)
                             .orElse(null);
                     return owner != null ? owner.getName() : "null";
                 }
@@ -275,23 +280,24 @@ public class PlaceholderRequest {
                     RequisitePlayer teamPlayer = team.getTeamPlayer(player.getUuid());
                     if (teamPlayer == null) return "null";
                     return switch (subPlaceholder) {
-                        case "rank" -> teamPlayer.getRank() != null ? teamPlayer.getRank().getName() : "null";
+                        case "rank" -> Objects.requireNonNullElse(view.rankOf(teamPlayer.getUuid()), "null");
                         case "xp" -> String.format("%.2f", teamPlayer.getCollectedXP());
                         default -> "null";
                     };
                 }
                 case "has" -> {
                     if (player == null || placeholderParts.length < 2) return "false";
-                    RequisitePlayer teamPlayer = team.getTeamPlayer(player.getUuid());
-                    if (teamPlayer == null || teamPlayer.getRank() == null) return "false";
+                    String rankName = view.rankOf(player.getUuid());
+                    Rank memberRank = rankName != null ? RankRegistry.getRank(rankName) : null;
+                    if (memberRank == null) return "false";
                     return switch (subPlaceholder) {
                         case "permission" -> {
                             if (args.length < 3) yield "false";
-                            yield String.valueOf(teamPlayer.getRank().hasPermission(args[2]));
+                            yield String.valueOf(memberRank.hasPermission(args[2]));
                         }
                         case "rank" -> {
                             if (args.length < 3) yield "false";
-                            yield String.valueOf(teamPlayer.getRank().getName().equalsIgnoreCase(args[2]));
+                            yield String.valueOf(memberRank.getName().equalsIgnoreCase(args[2]));
                         }
                         default -> "false";
                     };
@@ -301,8 +307,10 @@ public class PlaceholderRequest {
                     if (!subPlaceholder.equals("by_rank")) return "null";
                     Rank rank = RankRegistry.getRank(args[2]);
                     if (rank == null) return "null";
-                    return team.getPlayersByRank(rank)
+                    return view.membersWithRank(rank.getName())
                             .stream()
+                            .map(PlayerDataManager::getPlayer)
+                            .filter(Objects::nonNull)
                             .map(RequisitePlayer::getName)
                             .collect(Collectors.joining(", "));
                 }
@@ -333,6 +341,7 @@ public class PlaceholderRequest {
                 if (!teamManager.isTeamExists(teamUUID)) return "null";
                 Team team = TeamManager.getTeam(teamUUID);
                 if (team == null) return "null team";
+                TeamView view = team.getView();
 
                 String[] placeholderParts = args[1].split(":");
                 String mainPlaceholder = placeholderParts[0].toLowerCase();
@@ -340,28 +349,30 @@ public class PlaceholderRequest {
 
                 switch (mainPlaceholder) {
                     case "name" -> {
-                        return team.getName();
+                        return view.name();
                     }
                     case "uuid" -> {
-                        return team.getTeamUUID().toString();
+                        return view.teamUUID().toString();
                     }
                     case "members" -> {
-                        return String.valueOf(team.getMembers().size());
+                        return String.valueOf(view.memberCount());
                     }
                     case "level" -> {
-                        return String.valueOf(team.getTeamLevel().getLevel().getLevel());
+                        return String.valueOf(view.level());
                     }
                     case "xp" -> {
-                        return String.format("%.2f", team.getTeamLevel().getCurrentXp());
+                        return String.format("%.2f", view.currentXp());
                     }
                     case "balance" -> {
-                        return String.valueOf(team.getTeamBalance());
+                        return String.valueOf(view.balance());
                     }
                     case "owner" -> {
                         if (!subPlaceholder.equals("name")) return "null";
-                        RequisitePlayer owner = team.getPlayersByRank(RankRegistry.getOwnerRank())
+                        Rank ownerRank = RankRegistry.getOwnerRank();
+                        RequisitePlayer owner = ownerRank == null ? null : view.membersWithRank(ownerRank.getName())
                                 .stream()
                                 .findFirst()
+                                .map(PlayerDataManager::getPlayer)
                                 .orElse(null);
                         return owner != null ? owner.getName() : "null";
                     }
@@ -370,23 +381,24 @@ public class PlaceholderRequest {
                         RequisitePlayer teamPlayer = team.getTeamPlayer(player.getUuid());
                         if (teamPlayer == null) return "null";
                         return switch (subPlaceholder) {
-                            case "rank" -> teamPlayer.getRank() != null ? teamPlayer.getRank().getName() : "null";
+                            case "rank" -> Objects.requireNonNullElse(view.rankOf(teamPlayer.getUuid()), "null");
                             case "xp" -> String.format("%.2f", teamPlayer.getCollectedXP());
                             default -> "null";
                         };
                     }
                     case "has" -> {
                         if (player == null || placeholderParts.length < 2) return "false";
-                        RequisitePlayer teamPlayer = team.getTeamPlayer(player.getUuid());
-                        if (teamPlayer == null || teamPlayer.getRank() == null) return "false";
+                        String rankName = view.rankOf(player.getUuid());
+                        Rank memberRank = rankName != null ? RankRegistry.getRank(rankName) : null;
+                        if (memberRank == null) return "false";
                         return switch (subPlaceholder) {
                             case "permission" -> {
                                 if (args.length < 3) yield "false";
-                                yield String.valueOf(teamPlayer.getRank().hasPermission(args[2]));
+                                yield String.valueOf(memberRank.hasPermission(args[2]));
                             }
                             case "rank" -> {
                                 if (args.length < 3) yield "false";
-                                yield String.valueOf(teamPlayer.getRank().getName().equalsIgnoreCase(args[2]));
+                                yield String.valueOf(memberRank.getName().equalsIgnoreCase(args[2]));
                             }
                             default -> "false";
                         };
@@ -396,8 +408,10 @@ public class PlaceholderRequest {
                         if (!subPlaceholder.equals("by_rank")) return "null";
                         Rank rank = RankRegistry.getRank(args[2]);
                         if (rank == null) return "null";
-                        return team.getPlayersByRank(rank)
+                        return view.membersWithRank(rank.getName())
                                 .stream()
+                                .map(PlayerDataManager::getPlayer)
+                                .filter(Objects::nonNull)
                                 .map(RequisitePlayer::getName)
                                 .collect(Collectors.joining(", "));
                     }
@@ -433,6 +447,7 @@ public class PlaceholderRequest {
                 Team team = Leaderboard.getInstance().getTeamAtRank(position);
                 MessageUtils.debug("Retrieved team at position " + position + ": " + (team != null ? team.getName() : "null"));
                 if (team == null) return "null";
+                TeamView view = team.getView();
 
                 String[] placeholderParts = args[2].split(":");
                 String mainPlaceholder = placeholderParts[0].toLowerCase();
@@ -442,28 +457,30 @@ public class PlaceholderRequest {
 
                 switch (mainPlaceholder) {
                     case "name" -> {
-                        return team.getName();
+                        return view.name();
                     }
                     case "uuid" -> {
-                        return team.getTeamUUID().toString();
+                        return view.teamUUID().toString();
                     }
                     case "members" -> {
-                        return String.valueOf(team.getMembers().size());
+                        return String.valueOf(view.memberCount());
                     }
                     case "level" -> {
-                        return String.valueOf(team.getTeamLevel().getLevel().getLevel());
+                        return String.valueOf(view.level());
                     }
                     case "xp" -> {
-                        return String.format("%.2f", team.getTeamLevel().getCurrentXp());
+                        return String.format("%.2f", view.currentXp());
                     }
                     case "balance" -> {
-                        return String.valueOf(team.getTeamBalance());
+                        return String.valueOf(view.balance());
                     }
                     case "owner" -> {
                         if (!subPlaceholder.equals("name")) return "null";
-                        RequisitePlayer owner = team.getPlayersByRank(RankRegistry.getOwnerRank())
+                        Rank ownerRank = RankRegistry.getOwnerRank();
+                        RequisitePlayer owner = ownerRank == null ? null : view.membersWithRank(ownerRank.getName())
                                 .stream()
                                 .findFirst()
+                                .map(PlayerDataManager::getPlayer)
                                 .orElse(null);
                         return owner != null ? owner.getName() : "null";
                     }
@@ -471,8 +488,10 @@ public class PlaceholderRequest {
                         if (!subPlaceholder.equals("by_rank")) return "null";
                         Rank rank = RankRegistry.getRank(args[2]);
                         if (rank == null) return "null";
-                        return team.getPlayersByRank(rank)
+                        return view.membersWithRank(rank.getName())
                                 .stream()
+                                .map(PlayerDataManager::getPlayer)
+                                .filter(Objects::nonNull)
                                 .map(RequisitePlayer::getName)
                                 .collect(Collectors.joining(", "));
                     }
@@ -23,11 +23,10 @@ public class Leaderboard {
     private List<Team> sortedTeams;
     private final AtomicBoolean needsSort;
 
-    private static final Comparator<Team> TEAM_COMPARATOR = (team1, team2) -> {
-        double xp1 = team1.getTeamLevel() != null ? team1.getTeamLevel().getCurrentXp() : 0;
-        double xp2 = team2.getTeamLevel() != null ? team2.getTeamLevel().getCurrentXp() : 0;
-        int cmp = Double.compare(xp2, xp1); // descending XP
-        return cmp != 0 ? cmp : team1.getName().compareTo(team2.getName());
+    // compares views captured once per sort, so values changing during the sort cannot break the ordering
+    private static final Comparator<TeamView> VIEW_COMPARATOR = (view1, view2) -> {
+        int cmp = Double.compare(view2.currentXp(), view1.currentXp()); // descending XP
+        return cmp != 0 ? cmp : view1.name().compareTo(view2.name());
     };
 
     /**
@@ -45,10 +44,7 @@ public class Leaderboard {
             @Override
             public void run() {
                 if (needsSort.compareAndSet(true, false)) {
-                    sortedTeams = teamCache.values().stream()
-                            .filter(t -> t.getTeamLevel() != null)
-                            .sorted(TEAM_COMPARATOR)
-                            .collect(Collectors.toList());
+                    sortedTeams = sort();
                     MessageUtils.debug("Leaderboard auto-sorted (" + sortedTeams.size() + " teams).");
                 }
             }
@@ -99,14 +95,20 @@ public class Leaderboard {
      * Immediately re-sorts the leaderboard manually.
      */
     public void forceRefresh() {
-        sortedTeams = teamCache.values().stream()
-                .filter(t -> t.getTeamLevel() != null)
-                .sorted(TEAM_COMPARATOR)
-                .collect(Collectors.toList());
+        sortedTeams = sort();
         needsSort.set(false);
         MessageUtils.debug("Leaderboard forcefully refreshed manually.");
     }
 
+    private List<Team> sort() {
+        List<Map.Entry<Team, TeamView>> entries = new ArrayList<>(teamCache.size());
+        for (Team team : teamCache.values()) {
+            if (team.getTeamLevel() != null) entries.add(Map.entry(team, team.getView()));
+        }
+        entries.sort(Map.Entry.comparingByValue(VIEW_COMPARATOR));
+        return entries.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
     /**
      * Returns 1-based rank of a team.
      */
@@ -144,12 +146,12 @@ public class Leaderboard {
         StringBuilder sb = new StringBuilder("Leaderboard:\n");
         List<Team> currentList = this.sortedTeams;
         for (int i = 0; i < currentList.size(); i++) {
-            Team team = currentList.get(i);
+            TeamView view = currentList.get(i).getView();
             sb.append(String.format("%d. %s - Level: %d, XP: %.2f%n",
                     i + 1,
-                    team.getName(),
-                    team.getTeamLevel().getLevel().getLevel(),
-                    team.getTeamLevel().getCurrentXp()));
+                    view.name(),
+                    view.level(),
+                    view.currentXp()));
         }
         return sb.toString();
     }
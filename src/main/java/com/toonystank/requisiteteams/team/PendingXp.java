@@ -0,0 +1,69 @@
+package com.toonystank.requisiteteams.team;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * XP added to a team since it was last settled. Adding is safe from any thread.
+ * <p>
+ * The XP is counted in millionths, so a long can be taken and reset atomically unlike a DoubleAdder: XP added
+ * while it is taken is either part of the taken XP or stays pending, never lost in between. Summing fixed-point
+ * values also makes the result independent of the order the additions arrive in.
+ */
+final class PendingXp {
+
+    private static final double XP_SCALE = 1_000_000d;
+    // marks pending XP from several players, settled without a player
+    private static final UUID SEVERAL_PLAYERS = new UUID(0L, 0L);
+
+    private final AtomicLong xp = new AtomicLong();
+    private final AtomicReference<UUID> contributor = new AtomicReference<>();
+
+    /**
+     * @param amount     The XP to add.
+     * @param playerUUID The contributing player, or null for admin and system changes.
+     */
+    void add(double amount, @Nullable UUID playerUUID) {
+        UUID next = playerUUID != null ? playerUUID : SEVERAL_PLAYERS;
+        contributor.accumulateAndGet(next, (previous, added) -> previous == null || previous.equals(added) ? added : SEVERAL_PLAYERS);
+        xp.addAndGet(Math.round(amount * XP_SCALE));
+    }
+
+    /**
+     * @return The pending XP.
+     */
+    double get() {
+        return xp.get() / XP_SCALE;
+    }
+
+    /**
+     * Takes the pending XP and resets it.
+     *
+     * @return The taken XP.
+     */
+    Taken take() {
+        UUID taken = contributor.getAndSet(null);
+        long amount = xp.getAndSet(0);
+        return new Taken(amount / XP_SCALE, SEVERAL_PLAYERS.equals(taken) ? null : taken);
+    }
+
+    /**
+     * Drops the pending XP.
+     */
+    void clear() {
+        xp.set(0);
+        contributor.set(null);
+    }
+
+    /**
+     * XP taken from a {@link PendingXp}.
+     *
+     * @param xp          The XP, 0 if none was pending.
+     * @param contributor The player who added all of it, null if it was added by several players or without one.
+     */
+    record Taken(double xp, @Nullable UUID contributor) {
+    }
+}
@@ -1,102 +1,275 @@
 package com.toonystank.requisiteteams.team;
 
+import com.toonystank.requisiteteams.RequisiteTeams;
 import com.toonystank.requisiteteams.data.PlayerDataManager;
 import com.toonystank.requisiteteams.data.RequisitePlayer;
 import com.toonystank.requisiteteams.level.Level;
 import com.toonystank.requisiteteams.level.LevelData;
 import com.toonystank.requisiteteams.team.rank.Rank;
 import com.toonystank.requisiteteams.team.rank.RankRegistry;
-import com.toonystank.requisiteteams.utils.FileConfig;
 import com.toonystank.requisiteteams.utils.MessageUtils;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 // under development
 @Getter @Setter
-public class Team extends FileConfig {
+public class Team {
 
     private final UUID teamUUID;
     private String name;
     private TeamLevel teamLevel;
     private UUID ownerUUID;
-    private final List<UUID> members;
+    @Getter(AccessLevel.NONE)
+    private final TeamMembers members = new TeamMembers();
     private int TeamBalance;
 
     // to track if the team is new or being loaded
     private boolean isNew = true;
 
-    public Team(UUID teamUUID) throws IOException {
-        super(teamUUID.toString() + ".yml", "teams", false, false);
-        this.teamUUID = teamUUID;
-        members = new ArrayList<>();
-        init();
-    }
+    // incremented on every change, compared against the last saved value to skip unchanged teams
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private final AtomicLong modCount = new AtomicLong();
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private volatile long savedModCount = -1;
+
+    private static final AtomicLong viewVersions = new AtomicLong();
+    // replaced on the server thread after every change, read from any thread
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private volatile TeamView view;
+    // the member version the members of the current view were built from, server thread only
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private long viewMembersVersion = -1;
+
     /**
      * Constructor for creating a new team.
      *
      * @param teamUUID   The UUID of the team.
      * @param name       The name of the team.
      * @param teamLevel  The initial level of the team.
-     * @throws IOException If there is an error creating the file.
+     * @param ownerUUID  The UUID of the team owner.
      */
-    public Team(UUID teamUUID, String name, TeamLevel teamLevel,UUID ownerUUID) throws IOException {
-        super(teamUUID.toString() + ".yml", "teams", true, false);
+    public Team(UUID teamUUID, String name, TeamLevel teamLevel, UUID ownerUUID) {
         this.teamUUID = teamUUID;
         this.name = name;
         this.teamLevel = teamLevel;
         this.ownerUUID = ownerUUID;
-        members = new ArrayList<>();
         this.isNew = true;
+        publish();
     }
 
-    public void init() throws IOException {
-        this.name = getString("name");
-        String ownerUUIDString = getString("ownerUUID");
-        try {
-            UUID.fromString(ownerUUIDString);
-        }catch (IllegalArgumentException e) {
-            throw new IOException("Invalid UUID format for player: " + ownerUUIDString, e);
-        }
-        this.ownerUUID = UUID.fromString(ownerUUIDString);
-        int stringLevel = getInt("level", 0);
-        Level level = LevelData.getLevel(stringLevel);
+    /**
+     * Constructor for a team restored from a {@link TeamSnapshot}.
+     *
+     * @param teamUUID The UUID of the team.
+     * @param name     The name of the team.
+     */
+    private Team(UUID teamUUID, String name) {
+        this.teamUUID = teamUUID;
+        this.name = name;
+        publish();
+    }
+
+    /**
+     * Creates a team from stored data. Nothing outside the new team is changed, so a team that fails to load leaves
+     * the loaded teams and players untouched; once the team is registered, {@link #attachMembers()} points the
+     * members at it.
+     *
+     * @param snapshot The stored team data.
+     * @return The team.
+     * @throws IOException If the level or a member rank is invalid.
+     */
+    public static Team fromSnapshot(TeamSnapshot snapshot) throws IOException {
+        Team team = new Team(snapshot.teamUUID(), snapshot.name());
+        team.ownerUUID = snapshot.ownerUUID();
+        Level level = LevelData.getLevel(snapshot.level());
         if (level == null) {
-            throw new IOException("Level " + stringLevel + " not found for team " + name);
-        }
-        double currentXp = getDouble("currentXP");
-        this.teamLevel = new TeamLevel(level, currentXp,this);
-
-        Set<String> playersUUID = getConfigurationSection("players", false, true);
-        MessageUtils.debug("Found " + playersUUID.size() + " players in team " + name);
-        for (String stringUUID : playersUUID) {
-            MessageUtils.debug("Processing player UUID: " + stringUUID);
-            try {
-                UUID.fromString(stringUUID);
-            }catch (IllegalArgumentException e) {
-                throw new IOException("Invalid UUID format for player: " + stringUUID, e);
-            }
-            UUID uuid = UUID.fromString(stringUUID);
+            throw new IOException("Level " + snapshot.level() + " not found for team " + snapshot.name());
+        }
+        team.teamLevel = new TeamLevel(level, snapshot.currentXp(), team);
+        for (Map.Entry<UUID, String> member : snapshot.members().entrySet()) {
+            team.members.add(member.getKey(), team.resolveMember(member.getKey(), member.getValue()));
+        }
+        team.isNew = false;
+        team.TeamBalance = snapshot.balance();
+        team.teamLevel.levelUpLoaded();
+        team.markSaved(team.getModCount());
+        team.publish();
+        return team;
+    }
+
+    private Rank resolveMember(UUID uuid, String rankString) throws IOException {
+        RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
+        if (player == null) {
+            throw new IOException("Player with UUID " + uuid + " not found in PlayerDataManager");
+        }
+        Rank rank = RankRegistry.getRank(rankString);
+        if (rank == null) {
+            throw new IOException("Rank " + rankString + " not found for player " + player.getName());
+        }
+        MessageUtils.debug("Adding player " + player.getName() + " with rank " + rank.getName() + " to team " + name);
+        return rank;
+    }
+
+    /**
+     * Points the members of a team created by {@link #fromSnapshot(TeamSnapshot)} at it and indexes them.
+     * Called on the server thread once the team is registered in the team maps.
+     */
+    void attachMembers() {
+        for (UUID uuid : members) {
+            Rank rank = members.getRank(uuid);
             RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
-            if (player == null) {
-                throw new IOException("Player with UUID " + uuid + " not found in PlayerDataManager");
-            }
-            String rankString = getString("players." + stringUUID + ".rank");
-            Rank rank = RankRegistry.getRank(rankString);
-            if (rank == null) {
-                throw new IOException("Rank " + rankString + " not found for player " + player.getName());
+            if (player != null) player.setPlayerTeam(teamUUID, rank);
+            TeamManager.indexMember(uuid, teamUUID);
+        }
+    }
+
+    /**
+     * Marks the team as changed so the next autosave persists it.
+     */
+    public void markDirty() {
+        modCount.incrementAndGet();
+    }
+
+    /**
+     * @return true if the team changed since it was last saved or loaded.
+     */
+    public boolean isDirty() {
+        return modCount.get() != savedModCount;
+    }
+
+    /**
+     * @return The change counter, to be passed to {@link #markSaved(long)} once a save captured at this point succeeds.
+     */
+    public long getModCount() {
+        return modCount.get();
+    }
+
+    /**
+     * Records a successful save. Changes made after {@code savedModCount} was read keep the team dirty.
+     *
+     * @param savedModCount The change counter read before the team state was captured.
+     */
+    public void markSaved(long savedModCount) {
+        if (savedModCount > this.savedModCount) {
+            this.savedModCount = savedModCount;
+        }
+    }
+
+    /**
+     * @param modCount A change counter read earlier.
+     * @return true if the state at that point has been saved.
+     */
+    public boolean isSavedAt(long modCount) {
+        return savedModCount >= modCount;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        markDirty();
+        publish();
+    }
+
+    public void setOwnerUUID(UUID ownerUUID) {
+        this.ownerUUID = ownerUUID;
+        markDirty();
+        publish();
+    }
+
+    public void setTeamBalance(int teamBalance) {
+        this.TeamBalance = teamBalance;
+        markDirty();
+        publish();
+    }
+
+    public void setTeamLevel(TeamLevel teamLevel) {
+        this.teamLevel = teamLevel;
+        publish();
+    }
+
+    /**
+     * @return The latest immutable view of the team, safe to read from any thread without locking.
+     */
+    public TeamView getView() {
+        return view;
+    }
+
+    /**
+     * Publishes a new view of the current state. Called on the server thread after every change of the team.
+     * The member list and ranks of the previous view are reused unless a member joined, left or changed rank, so
+     * the frequent XP changes do not copy the members of large teams.
+     */
+    void publish() {
+        TeamView previous = view;
+        long membersVersion = members.getVersion();
+        List<UUID> memberList;
+        Map<UUID, String> memberRanks;
+        if (previous != null && membersVersion == viewMembersVersion) {
+            memberList = previous.members();
+            memberRanks = previous.memberRanks();
+        } else {
+            memberList = members.asList();
+            Map<UUID, String> ranks = new HashMap<>();
+            for (UUID uuid : memberList) {
+                Rank rank = members.getRank(uuid);
+                if (rank != null) ranks.put(uuid, rank.getName());
             }
-            MessageUtils.debug("Adding player " + player.getName() + " with rank " + rank.getName() + " to team " + name);
-            player.setPlayerTeam(teamUUID, rank);
-            members.add(uuid);
+            memberRanks = Collections.unmodifiableMap(ranks);
+            viewMembersVersion = membersVersion;
         }
-        this.isNew = false;
-        this.TeamBalance = getInt("balance", 0);
-        this.teamLevel.levelUp();
+        view = new TeamView(viewVersions.incrementAndGet(),
+                teamUUID,
+                name,
+                ownerUUID,
+                teamLevel != null ? teamLevel.getLevel().getLevel() : 0,
+                teamLevel != null ? teamLevel.getCurrentXp() : 0,
+                TeamBalance,
+                memberList,
+                memberRanks);
+    }
 
-        // still not done
+    /**
+     * Points the team level and the member ranks at the current definitions after levels or ranks were reloaded.
+     */
+    public void refreshDefinitions() {
+        if (teamLevel != null) {
+            Level level = LevelData.getLevel(teamLevel.getLevel().getLevel());
+            if (level != null && level != teamLevel.getLevel()) teamLevel.rebind(level);
+        }
+        for (UUID uuid : members) {
+            Rank current = members.getRank(uuid);
+            if (current == null) continue;
+            Rank rank = RankRegistry.getRank(current.getName());
+            if (rank == null || rank == current) continue;
+            members.setRank(uuid, rank);
+            RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
+            if (player != null && teamUUID.equals(player.getTeamUUID())) player.rebindRank(rank);
+        }
+    }
+
+    /**
+     * Captures the current state of the team for persistence.
+     *
+     * @return An immutable snapshot of the team.
+     */
+    public TeamSnapshot snapshot() {
+        Map<UUID, String> memberRanks = new LinkedHashMap<>();
+        for (UUID uuid : members) {
+            Rank rank = members.getRank(uuid);
+            if (rank != null) memberRanks.put(uuid, rank.getName());
+        }
+        return new TeamSnapshot(teamUUID,
+                name,
+                ownerUUID,
+                TeamBalance,
+                teamLevel != null ? teamLevel.getLevel().getLevel() : 1,
+                teamLevel != null ? teamLevel.getCurrentXp() : 0,
+                Collections.unmodifiableMap(memberRanks));
     }
 
     /**
@@ -112,14 +285,10 @@ public class Team extends FileConfig {
         if (!members.contains(uuid)) {
             return null; // Player not in team
         }
-        RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
-        if (player == null) {
-            return null; // Player not found
-        }
-        if (player.getTeamUUID().equals(teamUUID)) {
-            return player;
+        if (!teamUUID.equals(TeamManager.getTeamUUIDOf(uuid))) {
+            return null; // Player is in another team
         }
-        return null;
+        return PlayerDataManager.getPlayer(uuid);
     }
 
     public List<RequisitePlayer> getPlayersByRank(Rank rank) {
@@ -128,8 +297,9 @@ public class Team extends FileConfig {
         }
         List<RequisitePlayer> teamPlayers = new ArrayList<>();
         for (UUID uuid : members) {
+            if (!rank.equals(members.getRank(uuid))) continue;
             RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
-            if (player != null && player.getTeamUUID().equals(teamUUID) && player.getRank().equals(rank)) {
+            if (player != null) {
                 teamPlayers.add(player);
             }
         }
@@ -147,30 +317,65 @@ public class Team extends FileConfig {
         if (player == null || rank == null) {
             return false; // Invalid player or rank
         }
+        if (RequisiteTeams.isShuttingDown()) {
+            return false; // Changes would not be saved anymore
+        }
         if (members.contains(player.getUuid())) {
             return false; // Player already in team
         }
         player.setPlayerTeam(teamUUID,rank);
-        members.add(player.getUuid());
+        members.add(player.getUuid(), rank);
+        TeamManager.indexMember(player.getUuid(), teamUUID);
+        markDirty();
+        publish();
         return true;
     }
 
     public boolean removeFromTeam(RequisitePlayer requisitePlayer) {
-        if (members.contains(requisitePlayer.getUuid())) {
-            return members.remove(requisitePlayer.getUuid());
+        if (RequisiteTeams.isShuttingDown()) {
+            return false;
+        }
+        if (members.remove(requisitePlayer.getUuid())) {
+            TeamManager.unindexMember(requisitePlayer.getUuid(), teamUUID);
+            markDirty();
+            publish();
         }
         return true;
     }
 
-    @Override
-    public void reload() throws IOException {
-        MessageUtils.debug("Reloading team " + name);
-        init();
+    /**
+     * @return The members in join order, an immutable snapshot that is safe to iterate from any thread.
+     */
+    public List<UUID> getMembers() {
+        return members.asList();
     }
 
+    /**
+     * @param uuid The UUID of the player.
+     * @return true if the player is a member, in constant time.
+     */
+    public boolean isMember(UUID uuid) {
+        return members.contains(uuid);
+    }
 
+    /**
+     * @param uuid The UUID of the player.
+     * @return The rank of a member, or null if the player is not a member.
+     */
+    public @Nullable Rank getMemberRank(UUID uuid) {
+        return members.getRank(uuid);
+    }
 
-
-
-
+    /**
+     * Changes the rank of a member, called when the rank of the player changes.
+     *
+     * @param uuid The UUID of the member.
+     * @param rank The new rank.
+     */
+    public void setMemberRank(UUID uuid, Rank rank) {
+        if (members.setRank(uuid, rank)) {
+            markDirty();
+            publish();
+        }
+    }
 }
@@ -1,19 +1,41 @@
 package com.toonystank.requisiteteams.team;
 
+import com.toonystank.requisiteteams.RequisiteTeams;
 import com.toonystank.requisiteteams.level.Level;
 import com.toonystank.requisiteteams.level.LevelData;
+import com.toonystank.requisiteteams.team.storage.XpJournal;
 import com.toonystank.requisiteteams.utils.MessageUtils;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents a team's level and current XP, with automatic leveling functionality.
+ * <p>
+ * Adding XP is safe from any thread and does not touch the level: the XP is added to the {@link PendingXp} of the
+ * team and the team is queued once. Every tick the queued teams are settled on the server thread, which moves
+ * the pending XP into the current XP, levels the team up and notifies the leaderboard once, however many XP
+ * events arrived in that tick. The level and the settled XP are only changed on the server thread, which is also
+ * the only thread writing XP journal records, so the records of a team are always in the order of its changes.
  */
 @Getter
 public class TeamLevel {
 
-    private Level level;
-    private double currentXp;
+    private static final Queue<TeamLevel> settleQueue = new ConcurrentLinkedQueue<>();
+
+    private volatile Level level;
+    @Getter(AccessLevel.NONE)
+    private volatile double currentXp;
     private final Team team;
+    @Getter(AccessLevel.NONE)
+    private final PendingXp pendingXp = new PendingXp();
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean queued = new AtomicBoolean();
 
     public TeamLevel(Level level, double currentXp, Team team) {
         this.level = level;
@@ -22,16 +44,71 @@ public class TeamLevel {
     }
 
     /**
-     * Adds XP to the team and attempts to level up if possible.
+     * Adds XP to the team without a contributing player. Safe to call from any thread; the team levels up when the
+     * XP is settled on the next tick, or right away through {@link #levelUp()}.
      *
      * @param xp The XP to add.
-     * @return The next Level if the team leveled up, otherwise the current Level.
+     * @return The current Level, the level up from this XP is not applied yet.
      */
     public Level addXp(double xp) {
-        this.currentXp += xp;
-        Level newLevel = levelUp();
-        Leaderboard.getInstance().updateTeam(team); // Notify leaderboard of XP change
-        return newLevel;
+        return addXp(xp, null);
+    }
+
+    /**
+     * Adds XP contributed by a player to the team. Safe to call from any thread; the team levels up when the XP is
+     * settled on the next tick, or right away through {@link #levelUp()}.
+     *
+     * @param xp         The XP to add.
+     * @param playerUUID The contributing player, recorded in the XP journal when the XP is settled. May be null.
+     * @return The current Level, the level up from this XP is not applied yet.
+     */
+    public Level addXp(double xp, @Nullable UUID playerUUID) {
+        if (RequisiteTeams.isShuttingDown()) {
+            MessageUtils.debug("Ignoring " + xp + " XP for team " + team.getName() + ", the server is shutting down");
+            return level;
+        }
+        pendingXp.add(xp, playerUUID);
+        team.markDirty();
+        if (queued.compareAndSet(false, true)) settleQueue.add(this);
+        return level;
+    }
+
+    /**
+     * @return The XP collected towards the next level, including XP that is not settled yet.
+     */
+    public double getCurrentXp() {
+        return currentXp + pendingXp.get();
+    }
+
+    /**
+     * Settles the teams that received XP since the last call, each once. Runs every tick on the server thread.
+     */
+    public static void settleQueued() {
+        // only the teams queued so far, a team queued again while settling waits for the next tick
+        for (int remaining = settleQueue.size(); remaining > 0; remaining--) {
+            TeamLevel teamLevel = settleQueue.poll();
+            if (teamLevel == null) break;
+            teamLevel.queued.set(false);
+            if (teamLevel.settle()) {
+                teamLevel.team.publish();
+                Leaderboard.getInstance().updateTeam(teamLevel.team);
+            }
+        }
+    }
+
+    /**
+     * Moves the pending XP into the current XP, levels up and journals the result. Server thread only.
+     *
+     * @return true if the XP or the level changed.
+     */
+    private boolean settle() {
+        PendingXp.Taken pending = pendingXp.take();
+        Level startLevel = level;
+        if (pending.xp() != 0) currentXp += pending.xp();
+        levelUpLoop();
+        boolean changed = pending.xp() != 0 || level != startLevel;
+        if (changed) journal(pending.xp(), pending.contributor());
+        return changed;
     }
 
     /**
@@ -41,8 +118,17 @@ public class TeamLevel {
      * @return true if XP was removed, false if insufficient XP.
      */
     public boolean removeXp(double xp) {
+        if (RequisiteTeams.isShuttingDown()) return false;
+        if (settle()) {
+            // this team was taken off the settle queue already, publish the settled XP even if nothing is removed
+            team.publish();
+            Leaderboard.getInstance().updateTeam(team);
+        }
         if (currentXp >= xp) {
             this.currentXp -= xp;
+            team.markDirty();
+            journal(-xp, null);
+            team.publish();
             Leaderboard.getInstance().updateTeam(team); // Notify leaderboard of XP change
             return true;
         }
@@ -54,7 +140,13 @@ public class TeamLevel {
             MessageUtils.warning("Attempted to set negative XP for team " + team.getName() + ". Ignoring.");
             return false;
         }
+        if (RequisiteTeams.isShuttingDown()) return false;
+        // taken atomically, so XP added concurrently is either replaced here or stays pending, never lost in between
+        double delta = xp - (currentXp + pendingXp.take().xp());
         this.currentXp = xp;
+        team.markDirty();
+        journal(delta, null);
+        team.publish();
         Leaderboard.getInstance().updateTeam(team); // Notify leaderboard of XP change
         return true;
     }
@@ -74,6 +166,23 @@ public class TeamLevel {
      * @return Next Level if the team leveled up, Current Level if it cannot.
      */
     public Level levelUp() {
+        if (settle()) {
+            team.publish();
+            Leaderboard.getInstance().updateTeam(team);
+        }
+        return level;
+    }
+
+    /**
+     * Levels up a team that was just loaded or reloaded, without journaling it or notifying the leaderboard. The
+     * stored state is not a change of the team, and a journal record built from it would replace the newer
+     * journaled state when the journal is replayed.
+     */
+    void levelUpLoaded() {
+        levelUpLoop();
+    }
+
+    private Level levelUpLoop() {
         while (canLevelUp()) {
             Level nextLevel = LevelData.getNextLevel(level.getLevel());
             if (nextLevel == null) {
@@ -91,17 +200,50 @@ public class TeamLevel {
             // Level up: set new level and carry over excess XP
             this.currentXp -= LevelData.getNextLevelXp(level.getLevel());
             this.level = nextLevel;
+            team.markDirty();
             MessageUtils.debug("Team " + team.getName() + " leveled up to " + level.getLevel() + " with remaining XP: " + currentXp);
-            Leaderboard.getInstance().updateTeam(team); // Notify leaderboard of level change
         }
         return level;
     }
 
+    /**
+     * Restores the level and XP recorded in the XP journal, without journaling the change again.
+     *
+     * @param level     The journaled level.
+     * @param currentXp The journaled XP.
+     */
+    void restore(Level level, double currentXp) {
+        this.level = level;
+        this.pendingXp.clear();
+        this.currentXp = currentXp;
+        team.markDirty();
+        team.publish();
+        Leaderboard.getInstance().updateTeam(team);
+        // the journaled XP may be enough for a level up that was not settled before the crash
+        if (queued.compareAndSet(false, true)) settleQueue.add(this);
+    }
+
+    /**
+     * Switches to the reloaded definition of the current level, which is not a change of the team.
+     */
+    void rebind(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Journals the settled level and XP. Server thread only; XP that is still pending is journaled when it is settled.
+     */
+    private void journal(double delta, @Nullable UUID playerUUID) {
+        XpJournal journal = XpJournal.getInstance();
+        if (journal == null) return;
+        journal.append(team.getTeamUUID(), playerUUID, delta, level.getLevel(), currentXp);
+    }
+
     @Override
     public String toString() {
         return "TeamLevel{" +
                 "level=" + level.getLevel() +
-                ", currentXp=" + currentXp +
+                ", currentXp=" + getCurrentXp() +
                 '}';
     }
 }
\ No newline at end of file
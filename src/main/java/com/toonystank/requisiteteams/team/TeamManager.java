@@ -5,18 +5,40 @@ import com.toonystank.requisiteteams.data.PlayerDataManager;
 import com.toonystank.requisiteteams.data.RequisitePlayer;
 import com.toonystank.requisiteteams.level.Level;
 import com.toonystank.requisiteteams.level.LevelData;
-import com.toonystank.requisiteteams.team.rank.Rank;
+import com.toonystank.requisiteteams.team.storage.TeamRepository;
+import com.toonystank.requisiteteams.team.storage.TeamSnapshotFile;
+import com.toonystank.requisiteteams.team.storage.XpJournal;
+import com.toonystank.requisiteteams.utils.Handlers;
 import com.toonystank.requisiteteams.utils.MessageUtils;
 import lombok.Getter;
+import org.bukkit.Bukkit;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 /**
- * Manages teams, including registration, deletion, and persistence to YAML files.
+ * Manages teams, including registration, deletion, and persistence through the configured {@link TeamRepository}.
  */
 public class TeamManager {
 
@@ -28,19 +50,53 @@ public class TeamManager {
 
     private static final ConcurrentHashMap<UUID, String> teamUUIDMap = new ConcurrentHashMap<>();
 
-    public TeamManager() {
+    // player UUID to the UUID of their team, kept in step with every membership change of a Team
+    private static final ConcurrentHashMap<UUID, UUID> playerTeamMap = new ConcurrentHashMap<>();
+
+    @Getter
+    private final TeamRepository repository;
+    @Nullable
+    private final TeamSnapshotFile snapshotFile;
+    // every team write runs here, so writes land in the order their snapshots were captured
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "RequisiteTeams-TeamWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger queuedWrites = new AtomicInteger();
+    private final AtomicBoolean journalRotationPending = new AtomicBoolean();
+
+    public TeamManager() throws IOException {
         instance = this;
+        String storageType = RequisiteTeams.getInstance().getMainConfig().getStorageType();
+        try {
+            this.repository = TeamRepository.open(storageType, RequisiteTeams.getInstance().getMainConfig().getStorageShards());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        MessageUtils.toConsole("Using " + repository.getType() + " team storage", false);
+        File dataFolder = new File(RequisiteTeams.getInstance().getDataFolder(), "data");
+        if (RequisiteTeams.getInstance().getMainConfig().isXpJournalEnabled()) {
+            new XpJournal(dataFolder.toPath());
+        }
+        this.snapshotFile = RequisiteTeams.getInstance().getMainConfig().isSnapshotEnabled() && repository.isPersistent()
+                ? new TeamSnapshotFile(dataFolder.toPath()) : null;
+        // XP added during a tick is applied to the levels and the leaderboard once per team
+        Handlers.runTaskTimer(1, TeamLevel::settleQueued);
     }
 
     /**
-     * Registers a new team and saves it to its YAML file.
+     * Registers a new team. New teams are dirty, so the next save persists them.
      *
      * @param team The team to register.
      * @return The registered team.
      * @throws IllegalArgumentException If a team with the same name already exists.
-     * @throws IOException If saving to YAML fails.
+     * @throws IOException If the default level is missing.
      */
     public Team registerTeam(Team team) throws IOException {
+        if (RequisiteTeams.isShuttingDown()) {
+            throw new IOException("The server is shutting down");
+        }
         if (teamMap.containsKey(team.getName())) {
             Team existingTeam = teamMap.get(team.getName());
             existingTeam.setNew(false);
@@ -64,44 +120,163 @@ public class TeamManager {
     }
 
     /**
-     * Saves a team's data to its YAML file.
+     * Saves a team to the team repository and waits for the write.
      *
      * @param team The team to save.
      * @throws IOException If saving fails.
      */
     public void saveTeam(Team team) throws IOException {
-        // Save team data using FileConfig
-        team.set("name", team.getName());
-        team.set("ownerUUID", team.getOwnerUUID() != null ? team.getOwnerUUID().toString() : "null");
+        await(saveTeamsAsync(List.of(team)));
+        MessageUtils.toConsole("Saved team " + team.getName(), true);
+    }
 
-        team.set("level", team.getTeamLevel() != null ? team.getTeamLevel().getLevel().getLevel() : 1);
-        team.set("currentXP", team.getTeamLevel() != null ? team.getTeamLevel().getCurrentXp() : 0);
-        team.set("balance", team.getTeamBalance());
+    /**
+     * Saves all teams in the teamMap to the team repository and waits for the write.
+     *
+     * @throws IOException If saving any team fails.
+     */
+    public void saveAllTeams() throws IOException {
+        int saved = await(saveTeamsAsync(teamMap.values()));
+        MessageUtils.toConsole("Saved " + saved + " teams", false);
+    }
 
-        // Save players with their ranks
-        for (UUID uuid : team.getMembers()) {
-            RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
-            if (player == null) {
-                MessageUtils.toConsole("Player with UUID " + uuid + " not found in PlayerDataManager, skipping", true);
-                continue;
+    /**
+     * Saves only the teams that changed since their last successful save and waits for the write.
+     *
+     * @return The number of teams that were saved.
+     * @throws IOException If saving any team fails. Teams that were not saved stay dirty.
+     */
+    public int saveDirtyTeams() throws IOException {
+        return await(saveDirtyTeamsAsync());
+    }
+
+    /**
+     * Captures the teams that changed since their last successful save and writes them on the team writer thread.
+     * Call this on the thread that changes teams, normally the server thread.
+     * <p>
+     * As this covers every change made so far, the XP journal is compacted once the teams are written.
+     *
+     * @return The number of teams that were saved, completes once they are written.
+     */
+    public CompletableFuture<Integer> saveDirtyTeamsAsync() {
+        boolean rotated = rotateJournal();
+        CompletableFuture<Integer> save = saveTeamsAsync(getDirtyTeams());
+        if (rotated) finishJournalRotation(() -> !save.isCompletedExceptionally());
+        return save;
+    }
+
+    /**
+     * @return The teams that changed since their last successful save.
+     */
+    public List<Team> getDirtyTeams() {
+        List<Team> dirtyTeams = new ArrayList<>();
+        for (Team team : teamMap.values()) {
+            if (team.isDirty()) dirtyTeams.add(team);
+        }
+        return dirtyTeams;
+    }
+
+    /**
+     * Captures the given teams on the calling thread and writes them on the team writer thread.
+     * <p>
+     * Capturing only copies the team state into immutable {@link TeamSnapshot}s, so it is cheap enough for the
+     * server thread; serializing and writing happen in the background, one batch at a time and in submission order.
+     *
+     * @param teams The teams to save.
+     * @return The number of teams that were saved, completes once they are written.
+     */
+    public CompletableFuture<Integer> saveTeamsAsync(Collection<Team> teams) {
+        if (teams.isEmpty()) return CompletableFuture.completedFuture(0);
+        List<Team> savedTeams = new ArrayList<>(teams.size());
+        List<Long> modCounts = new ArrayList<>(teams.size());
+        List<TeamSnapshot> snapshots = new ArrayList<>(teams.size());
+        for (Team team : teams) {
+            modCounts.add(team.getModCount());
+            savedTeams.add(team);
+            snapshots.add(team.snapshot());
+        }
+        return submit(() -> {
+            long start = System.currentTimeMillis();
+            repository.saveBatch(snapshots);
+            for (int i = 0; i < savedTeams.size(); i++) {
+                savedTeams.get(i).markSaved(modCounts.get(i));
             }
-            Rank rank = player.getRank();
-            team.set("players." + uuid + ".rank", rank.getName());
+            MessageUtils.toConsole("Saved " + snapshots.size() + " teams to " + repository.getType() + " storage in " + (System.currentTimeMillis() - start) + " ms", true);
+            return snapshots.size();
+        });
+    }
+
+    /**
+     * @return The number of team writes that were submitted and have not finished yet.
+     */
+    public int getQueuedWrites() {
+        return queuedWrites.get();
+    }
+
+    /**
+     * Moves the XP journal aside, so the records written so far can be dropped once a save covering them finishes.
+     * Only one rotation is outstanding at a time: while one waits for its save, nothing is rotated.
+     *
+     * @return true if the journal was rotated and {@link #finishJournalRotation(BooleanSupplier)} must follow.
+     */
+    public boolean rotateJournal() {
+        XpJournal journal = XpJournal.getInstance();
+        if (journal == null || !journalRotationPending.compareAndSet(false, true)) return false;
+        try {
+            journal.rotate();
+            return true;
+        } catch (IOException e) {
+            journalRotationPending.set(false);
+            MessageUtils.warning("Failed to rotate XP journal: " + e.getMessage());
+            return false;
         }
-        team.save();
-        MessageUtils.toConsole("Saved team " + team.getName() + " to " + team.getFileName(), false);
     }
 
     /**
-     * Saves all teams in the teamMap to their respective YAML files.
+     * Ends a rotation once the writes submitted before this call finished.
      *
-     * @throws IOException If saving any team fails.
+     * @param covered Checked on the team writer thread: whether those writes saved every team changed before the
+     *                rotation. If so the rotated journal is discarded, otherwise it is kept for the next rotation.
      */
-    public void saveAllTeams() throws IOException {
-        for (Team team : teamMap.values()) {
-            saveTeam(team);
+    public void finishJournalRotation(BooleanSupplier covered) {
+        submit(() -> {
+            XpJournal journal = XpJournal.getInstance();
+            if (journal != null && covered.getAsBoolean()) journal.discardRotated();
+            return null;
+        }).whenComplete((result, error) -> {
+            journalRotationPending.set(false);
+            if (error != null) MessageUtils.warning("Failed to compact XP journal: " + error.getMessage());
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(IOTask<T> task) {
+        queuedWrites.incrementAndGet();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.run();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    queuedWrites.decrementAndGet();
+                }
+            }, writer);
+        } catch (RejectedExecutionException e) {
+            queuedWrites.decrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("Team storage is closed", e));
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving teams", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) throw ioException;
+            throw new IOException(e.getCause());
         }
-        MessageUtils.toConsole("Saved " + teamMap.size() + " teams to YAML files", false);
     }
 
     /**
@@ -121,31 +296,72 @@ public class TeamManager {
     }
 
     public Team getTeamByPlayer(RequisitePlayer player) {
-        UUID uuid = player.getTeamUUID();
-        return getTeam(uuid);
+        return getTeamByPlayer(player.getUuid());
+    }
+
+    /**
+     * Gets the team of a player from the player to team index, in constant time.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The team of the player, or null if the player is not in a team.
+     */
+    public static @Nullable Team getTeamByPlayer(UUID playerUUID) {
+        UUID teamUUID = getTeamUUIDOf(playerUUID);
+        return teamUUID != null ? getTeam(teamUUID) : null;
+    }
+
+    /**
+     * @param playerUUID The UUID of the player.
+     * @return The UUID of the team of the player, or null if the player is not in a loaded team.
+     */
+    public static @Nullable UUID getTeamUUIDOf(UUID playerUUID) {
+        if (playerUUID == null) return null;
+        UUID teamUUID = playerTeamMap.get(playerUUID);
+        // entries of a team that failed to load point at no team
+        return teamUUID != null && teamUUIDMap.containsKey(teamUUID) ? teamUUID : null;
     }
 
     /**
-     * Deletes a team and removes its YAML file.
+     * @return A copy of the player to team index, for checks that run off the server thread and must not see it
+     * change while they run.
+     */
+    public static Map<UUID, UUID> getMembershipSnapshot() {
+        return Map.copyOf(playerTeamMap);
+    }
+
+    static void indexMember(UUID playerUUID, UUID teamUUID) {
+        playerTeamMap.put(playerUUID, teamUUID);
+    }
+
+    static void unindexMember(UUID playerUUID, UUID teamUUID) {
+        playerTeamMap.remove(playerUUID, teamUUID);
+    }
+
+    /**
+     * Deletes a team and removes it from the team repository in the background.
      *
      * @param name The name of the team to delete.
      * @return true if the team was deleted, false if it didn't exist.
      */
     public boolean deleteTeam(String name) {
         Team team = teamMap.get(name);
-        if (team != null) {
-            teamMap.remove(name);
-            teamUUIDMap.remove(team.getTeamUUID());
-            Leaderboard.getInstance().removeTeam(team); // Remove from leaderboard
-            boolean deleted = team.deleteConfig();
-            if (deleted) {
-                MessageUtils.toConsole("Deleted team " + name + " and its YAML file", false);
+        if (team == null || RequisiteTeams.isShuttingDown()) return false;
+        teamMap.remove(name);
+        teamUUIDMap.remove(team.getTeamUUID());
+        Leaderboard.getInstance().removeTeam(team); // Remove from leaderboard
+        releaseMembers(team, null);
+        UUID teamUUID = team.getTeamUUID();
+        submit(() -> {
+            repository.delete(teamUUID);
+            return null;
+        }).whenComplete((result, error) -> {
+            if (error == null) {
+                MessageUtils.toConsole("Deleted team " + name + " from " + repository.getType() + " storage", false);
             } else {
-                MessageUtils.toConsole("Failed to delete YAML file for team " + name, true);
+                MessageUtils.toConsole("Failed to delete team " + name + " from " + repository.getType() + " storage: " + error.getMessage(), true);
             }
-            return deleted;
-        }
-        return false;
+        });
+        return true;
     }
 
     /**
@@ -155,12 +371,7 @@ public class TeamManager {
      * @return true if the player is in a team, false otherwise.
      */
     public boolean isPlayerInTeam(@NotNull RequisitePlayer player) {
-        for (Team team : teamMap.values()) {
-            if (team.getMembers().contains(player.getUuid())) {
-                return true;
-            }
-        }
-        return false;
+        return getTeamUUIDOf(player.getUuid()) != null;
     }
 
     public boolean isTeamExists(String teamName) {
@@ -193,61 +404,409 @@ public class TeamManager {
      * @throws IOException If loading fails for any team.
      */
     public void loadTeams() throws IOException {
-        String teamsFolderPath = RequisiteTeams.getInstance().getDataFolder() + File.separator + "teams";
-        teamMap.clear();
-        teamUUIDMap.clear();
-        File teamsFolder = new File(teamsFolderPath);
-        if (!teamsFolder.exists() || !teamsFolder.isDirectory()) {
-            if (teamsFolder.mkdirs()) {
-                MessageUtils.toConsole("Created teams folder: " + teamsFolderPath, false);
-            } else {
-                MessageUtils.toConsole("Failed to create teams folder: " + teamsFolderPath, true);
-            }
-            return;
+        if (!loadTeamsFromSnapshot()) {
+            loadTeamsFromRepository();
         }
-        File[] teamFiles = teamsFolder.listFiles((dir, name) -> name.endsWith(".yml"));
-        if (teamFiles == null || teamFiles.length == 0) {
-            MessageUtils.toConsole("No team YAML files found in " + teamsFolderPath, false);
-            return;
+        try {
+            repository.resetChangeTracking();
+        } catch (IOException e) {
+            MessageUtils.warning("Failed to record the state of the team storage, the next reload reloads every team: " + e.getMessage());
         }
-        MessageUtils.debug("Loading teams from " + teamsFolderPath + " with " + teamFiles.length + " files");
+        replayXpJournal();
+    }
 
-        for (File teamFile : teamFiles) {
-            MessageUtils.debug("Loading team file: " + teamFile.getName());
+    private void loadTeamsFromRepository() throws IOException {
+        long start = System.currentTimeMillis();
+        teamMap.clear();
+        teamUUIDMap.clear();
+        playerTeamMap.clear();
+        List<TeamSnapshot> snapshots = repository.loadAll();
+        Set<UUID> members = new HashSet<>();
+        for (TeamSnapshot snapshot : snapshots) {
+            members.addAll(snapshot.members().keySet());
+        }
+        PlayerDataManager.preload(members);
+        for (TeamSnapshot snapshot : snapshots) {
             try {
-                String fileName = teamFile.getName();
-                String uuidStr = fileName.replace(".yml", "");
-                UUID teamUUID;
-                try {
-                    teamUUID = UUID.fromString(uuidStr);
-                } catch (IllegalArgumentException e) {
-                    MessageUtils.toConsole("Invalid UUID format in file name: " + fileName, true);
-                    continue;
-                }
-                Team team = new Team(teamUUID); // Team.init() is called in constructor
+                Team team = Team.fromSnapshot(snapshot);
                 if (team.getName() == null) {
-                    MessageUtils.toConsole("Team in file " + fileName + " has no name, skipping", true);
+                    MessageUtils.toConsole("Team " + snapshot.teamUUID() + " has no name, skipping", true);
                     continue;
                 }
-                MessageUtils.debug("Initializing team: " + team.getName());
-                teamUUIDMap.put(teamUUID, team.getName());
+                teamUUIDMap.put(team.getTeamUUID(), team.getName());
                 teamMap.put(team.getName(), team);
-                MessageUtils.toConsole("Loaded team " + team.getName() + " from " + fileName, false);
+                team.attachMembers();
+                MessageUtils.debug("Loaded team " + team.getName());
             } catch (IOException e) {
-                MessageUtils.toConsole("Failed to load team from " + teamFile.getName() + ": " + e.getMessage(), true);
+                MessageUtils.toConsole("Failed to load team " + snapshot.teamUUID() + " from " + repository.getType() + " storage: " + e.getMessage(), true);
             }
         }
         Leaderboard.getInstance().refreshFromTeamMap(); // Refresh leaderboard after loading
-        MessageUtils.toConsole("Loaded " + teamMap.size() + " teams from " + teamsFolderPath, false);
+        MessageUtils.toConsole("Loaded " + teamMap.size() + " teams from " + repository.getType() + " storage in " + (System.currentTimeMillis() - start) + " ms", false);
+    }
+
+    /**
+     * Loads the teams from the binary snapshot if it was written from the current state of the team store.
+     *
+     * @return true if the teams were loaded, false if the snapshot is missing, stale or damaged.
+     */
+    private boolean loadTeamsFromSnapshot() {
+        if (snapshotFile == null) return false;
+        long start = System.currentTimeMillis();
+        List<TeamSnapshotFile.Entry> entries;
+        try {
+            entries = snapshotFile.read(repository.getStamp());
+        } catch (IOException e) {
+            MessageUtils.warning("Failed to check the team snapshot: " + e.getMessage());
+            return false;
+        }
+        if (entries == null) return false;
+        long read = System.currentTimeMillis() - start;
+        Set<UUID> members = new HashSet<>();
+        for (TeamSnapshotFile.Entry entry : entries) {
+            members.addAll(entry.team().members().keySet());
+        }
+        PlayerDataManager.preload(members);
+        List<Team> teams = new ArrayList<>(entries.size());
+        for (TeamSnapshotFile.Entry entry : entries) {
+            TeamSnapshot snapshot = entry.team();
+            try {
+                Team team = Team.fromSnapshot(snapshot);
+                if (team.getName() == null) continue;
+                if (entry.dirty()) team.markDirty();
+                teams.add(team);
+            } catch (IOException e) {
+                // a level or rank was removed since the snapshot was written, the store decides what to do with it
+                MessageUtils.toConsole("Team snapshot is out of date (" + e.getMessage() + "), loading teams from the source instead", false);
+                return false;
+            }
+        }
+        teamMap.clear();
+        teamUUIDMap.clear();
+        playerTeamMap.clear();
+        for (Team team : teams) {
+            teamUUIDMap.put(team.getTeamUUID(), team.getName());
+            teamMap.put(team.getName(), team);
+            team.attachMembers();
+        }
+        Leaderboard.getInstance().refreshFromTeamMap();
+        MessageUtils.toConsole("Loaded " + teamMap.size() + " teams from the team snapshot in " + (System.currentTimeMillis() - start) + " ms (read " + read + " ms)", false);
+        return true;
     }
 
+    /**
+     * Writes the binary snapshot of every team, used to speed up the next start.
+     * The teams are captured on the calling thread and written after the saves queued before them.
+     *
+     * @return Completes once the snapshot was written or failed.
+     */
+    public CompletableFuture<Void> writeSnapshot() {
+        if (snapshotFile == null) return CompletableFuture.completedFuture(null);
+        List<TeamSnapshot> teams = new ArrayList<>(teamMap.size());
+        List<Team> capturedTeams = new ArrayList<>(teamMap.size());
+        List<Long> modCounts = new ArrayList<>(teamMap.size());
+        for (Team team : teamMap.values()) {
+            modCounts.add(team.getModCount());
+            capturedTeams.add(team);
+            teams.add(team.snapshot());
+        }
+        return submit(() -> {
+            long start = System.currentTimeMillis();
+            // the saves queued before this task are written now, so the stamp matches the captured state
+            long stamp = repository.getStamp();
+            List<TeamSnapshotFile.Entry> entries = new ArrayList<>(teams.size());
+            for (int i = 0; i < teams.size(); i++) {
+                entries.add(new TeamSnapshotFile.Entry(teams.get(i), !capturedTeams.get(i).isSavedAt(modCounts.get(i))));
+            }
+            snapshotFile.write(stamp, entries);
+            MessageUtils.toConsole("Wrote team snapshot with " + entries.size() + " teams in " + (System.currentTimeMillis() - start) + " ms", true);
+            return (Void) null;
+        }).exceptionally(error -> {
+            MessageUtils.warning("Failed to write team snapshot: " + error.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the queued team writes and deletions to finish.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return true if nothing is queued anymore, false if the timeout passed first.
+     */
+    public boolean awaitPendingWrites(long timeoutMillis) {
+        try {
+            submit(() -> null).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the team repository and the XP journal. Only call this once the last save finished.
+     */
+    public void close() {
+        writer.shutdown();
+        repository.close();
+        XpJournal journal = XpJournal.getInstance();
+        if (journal != null) journal.close();
+        if (instance == this) instance = null;
+    }
+
+    /**
+     * Shuts the writer down after a shutdown ran out of time. Writes that did not start yet are dropped, the running
+     * one gets a short grace period; the repository is only closed if it finished, otherwise the write is left to
+     * complete on its own rather than closing the storage under it. Changes that were not written are recovered
+     * from the XP journal or lost, which is logged.
+     *
+     * @param graceMillis How long to wait for the running write.
+     */
+    public void abandon(long graceMillis) {
+        writer.shutdown();
+        List<Runnable> dropped = new ArrayList<>();
+        writer.getQueue().drainTo(dropped);
+        if (!dropped.isEmpty()) {
+            MessageUtils.error("Abandoned " + dropped.size() + " queued team writes on shutdown, their changes are lost");
+        }
+        boolean finished;
+        try {
+            finished = writer.awaitTermination(graceMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finished = false;
+        }
+        if (finished) {
+            repository.close();
+        } else {
+            MessageUtils.error("A team write is still running after shutdown, the " + repository.getType() + " storage is left open for it to finish");
+        }
+        XpJournal journal = XpJournal.getInstance();
+        if (journal != null) journal.close();
+        if (instance == this) instance = null;
+    }
+
+    @FunctionalInterface
+    private interface IOTask<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Restores XP and levels recorded in the XP journal since the last autosave.
+     */
+    private void replayXpJournal() {
+        XpJournal journal = XpJournal.getInstance();
+        if (journal == null) return;
+        Map<UUID, XpJournal.Entry> entries;
+        try {
+            entries = journal.readLatest();
+        } catch (IOException e) {
+            MessageUtils.error("Failed to read XP journal: " + e.getMessage());
+            return;
+        }
+        int restored = 0;
+        for (XpJournal.Entry entry : entries.values()) {
+            Team team = getTeam(entry.teamUUID());
+            if (team == null || team.getTeamLevel() == null) continue;
+            TeamLevel teamLevel = team.getTeamLevel();
+            if (teamLevel.getLevel().getLevel() == entry.level() && teamLevel.getCurrentXp() == entry.currentXp()) continue;
+            Level level = LevelData.getLevel(entry.level());
+            if (level == null) {
+                MessageUtils.toConsole("Skipping XP journal record for team " + team.getName() + ": level " + entry.level() + " not found", true);
+                continue;
+            }
+            teamLevel.restore(level, entry.currentXp());
+            restored++;
+        }
+        if (restored > 0) {
+            MessageUtils.toConsole("Restored XP of " + restored + " teams from the XP journal", false);
+        }
+    }
+
+    /**
+     * Reloads the teams that were changed in the storage since they were loaded or saved, e.g. edited by hand.
+     * <p>
+     * Changed teams are read in the background and then swapped into the team maps on the server thread, one entry
+     * at a time, so a team never disappears for readers while it is replaced. Unchanged teams are kept and only
+     * pointed at the reloaded levels and ranks.
+     */
     public void reload() {
         MessageUtils.toConsole("Reloading TeamManager...", false);
+        long start = System.currentTimeMillis();
+        Bukkit.getScheduler().runTaskAsynchronously(RequisiteTeams.getInstance(), () -> {
+            try {
+                TeamRepository.Changes changes = repository.detectChanges();
+                List<TeamSnapshot> snapshots = changes != null ? repository.loadBatch(changes.changed()) : repository.loadAll();
+                Set<UUID> members = new HashSet<>();
+                for (TeamSnapshot snapshot : snapshots) {
+                    members.addAll(snapshot.members().keySet());
+                }
+                PlayerDataManager.preload(members);
+                Handlers.runTask(() -> applyReload(snapshots, changes, start));
+            } catch (IOException e) {
+                MessageUtils.toConsole("Failed to reload TeamManager: " + e.getMessage(), true);
+            }
+        });
+    }
+
+    /**
+     * Swaps reloaded teams into the team maps.
+     *
+     * @param snapshots The reloaded teams.
+     * @param changes   What changed, or null if every team was reloaded.
+     */
+    private void applyReload(List<TeamSnapshot> snapshots, @Nullable TeamRepository.Changes changes, long start) {
+        Set<UUID> removed = new HashSet<>();
+        if (changes != null) {
+            removed.addAll(changes.removed());
+        } else {
+            removed.addAll(teamUUIDMap.keySet());
+            for (TeamSnapshot snapshot : snapshots) {
+                removed.remove(snapshot.teamUUID());
+            }
+            // a full reload cannot tell a team deleted from the storage from one that was never saved or has
+            // unsaved changes, those are kept and written by the next autosave
+            removed.removeIf(teamUUID -> {
+                Team team = getTeam(teamUUID);
+                return team != null && team.isDirty();
+            });
+        }
+        Set<UUID> reloaded = new HashSet<>();
+        for (TeamSnapshot snapshot : snapshots) {
+            Team existing = getTeam(snapshot.teamUUID());
+            if (changes == null && existing != null && (existing.isDirty() || existing.snapshot().equals(snapshot))) {
+                continue; // full reload, but this team is unchanged or its unsaved changes are newer
+            }
+            try {
+                Team team = Team.fromSnapshot(snapshot);
+                if (team.getName() == null) continue;
+                swapTeam(existing, team);
+                team.attachMembers();
+                reloaded.add(team.getTeamUUID());
+            } catch (IOException e) {
+                MessageUtils.toConsole("Failed to reload team " + snapshot.teamUUID() + ", keeping the loaded state: " + e.getMessage(), true);
+            }
+        }
+        for (UUID teamUUID : removed) {
+            Team team = getTeam(teamUUID);
+            if (team == null) continue;
+            teamMap.remove(team.getName(), team);
+            teamUUIDMap.remove(teamUUID, team.getName());
+            Leaderboard.getInstance().removeTeam(team);
+            releaseMembers(team, null);
+        }
+        for (Team team : teamMap.values()) {
+            if (!reloaded.contains(team.getTeamUUID())) team.refreshDefinitions();
+        }
         try {
-            loadTeams();
-            MessageUtils.toConsole("TeamManager reloaded successfully", false);
+            repository.resetChangeTracking();
         } catch (IOException e) {
-            MessageUtils.toConsole("Failed to reload TeamManager: " + e.getMessage(), true);
+            MessageUtils.warning("Failed to record the state of the team storage: " + e.getMessage());
+        }
+        MessageUtils.toConsole("TeamManager reloaded " + reloaded.size() + " changed and removed " + removed.size() + " teams in " + (System.currentTimeMillis() - start) + " ms", false);
+    }
+
+    /**
+     * Writes repaired team data to the storage and swaps the repaired teams in, like a reload of just those teams.
+     * Must be called on the server thread. A team is only repaired if neither the loaded team nor the stored one
+     * changed since it was verified, otherwise the repair, built from the verified data, would discard that change.
+     *
+     * @param repairs The repaired teams with the data they were built from.
+     * @return The number of teams that were repaired, completes once they are swapped in.
+     */
+    public CompletableFuture<Integer> applyRepairs(Collection<TeamVerifier.Repair> repairs) {
+        long start = System.currentTimeMillis();
+        List<TeamVerifier.Repair> pending = new ArrayList<>(repairs.size());
+        for (TeamVerifier.Repair repair : repairs) {
+            if (changedSince(repair)) continue;
+            pending.add(repair);
+        }
+        if (pending.isEmpty()) return CompletableFuture.completedFuture(0);
+        CompletableFuture<Integer> applied = new CompletableFuture<>();
+        submit(() -> {
+            // the writer is the only thread saving teams, so nothing is written between this check and the save
+            List<TeamVerifier.Repair> unchanged = new ArrayList<>(pending.size());
+            for (TeamVerifier.Repair repair : pending) {
+                if (repair.scanned().equals(repository.load(repair.scanned().teamUUID()))) {
+                    unchanged.add(repair);
+                } else {
+                    MessageUtils.warning("Team " + repair.scanned().teamUUID() + " changed in the storage since it was verified, not repairing it");
+                }
+            }
+            List<TeamSnapshot> snapshots = new ArrayList<>(unchanged.size());
+            for (TeamVerifier.Repair repair : unchanged) {
+                snapshots.add(repair.repaired());
+            }
+            repository.saveBatch(snapshots);
+            return unchanged;
+        }).whenComplete((saved, error) -> {
+            if (error != null) {
+                applied.completeExceptionally(error);
+                return;
+            }
+            Handlers.runTask(() -> {
+                List<TeamSnapshot> snapshots = new ArrayList<>(saved.size());
+                Set<UUID> changed = new HashSet<>();
+                for (TeamVerifier.Repair repair : saved) {
+                    if (changedSince(repair)) {
+                        // changed while the repair was written, the loaded team wins and is saved over the repair
+                        getTeam(repair.scanned().teamUUID()).markDirty();
+                        continue;
+                    }
+                    snapshots.add(repair.repaired());
+                    changed.add(repair.repaired().teamUUID());
+                }
+                applyReload(snapshots, new TeamRepository.Changes(changed, Set.of()), start);
+                applied.complete(snapshots.size());
+            });
+        });
+        return applied;
+    }
+
+    /**
+     * @return true if the loaded team has unsaved changes or differs from the data the repair was built from.
+     */
+    private boolean changedSince(TeamVerifier.Repair repair) {
+        Team existing = getTeam(repair.scanned().teamUUID());
+        if (existing == null || (!existing.isDirty() && existing.snapshot().equals(repair.scanned()))) return false;
+        MessageUtils.warning("Team " + existing.getName() + " changed since it was verified, not repairing it");
+        return true;
+    }
+
+    /**
+     * Replaces a loaded team with its reloaded version. The new entry is published before the old one is removed.
+     */
+    private void swapTeam(@Nullable Team existing, Team team) {
+        if (existing != null && existing.isDirty()) {
+            MessageUtils.warning("Team " + existing.getName() + " was changed in the storage, discarding its unsaved changes");
+        }
+        teamMap.put(team.getName(), team);
+        teamUUIDMap.put(team.getTeamUUID(), team.getName());
+        if (existing == null) {
+            Leaderboard.getInstance().addTeam(team);
+            return;
+        }
+        if (!existing.getName().equals(team.getName())) {
+            teamMap.remove(existing.getName(), existing);
+        }
+        Leaderboard.getInstance().removeTeam(existing);
+        Leaderboard.getInstance().addTeam(team);
+        releaseMembers(existing, team);
+    }
+
+    /**
+     * Clears the team of players that were in {@code previous} but are not in {@code current}.
+     */
+    private static void releaseMembers(Team previous, @Nullable Team current) {
+        for (UUID uuid : previous.getMembers()) {
+            if (current != null && current.isMember(uuid)) continue;
+            unindexMember(uuid, previous.getTeamUUID());
+            RequisitePlayer player = PlayerDataManager.getPlayer(uuid);
+            if (player != null && previous.getTeamUUID().equals(player.getTeamUUID())) {
+                player.setPlayerTeam(null, null);
+            }
         }
     }
 
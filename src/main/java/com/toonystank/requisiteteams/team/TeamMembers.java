@@ -0,0 +1,108 @@
+package com.toonystank.requisiteteams.team;
+
+import com.toonystank.requisiteteams.team.rank.Rank;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The members of a team with their ranks.
+ * <p>
+ * Lookups go to a concurrent hash map and are constant time for any team size. The join order is kept in an
+ * immutable list that is replaced on every join and leave, which are rare compared to lookups, so iterating
+ * never needs a lock, never sees a half-applied change and is safe from the team writer while the server thread
+ * changes the team.
+ */
+public final class TeamMembers implements Iterable<UUID> {
+
+    private final Map<UUID, Rank> ranks = new ConcurrentHashMap<>();
+    private volatile List<UUID> order = List.of();
+    // bumped after every join, leave and rank change
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @return true if the player is a member.
+     */
+    public boolean contains(UUID uuid) {
+        return uuid != null && ranks.containsKey(uuid);
+    }
+
+    /**
+     * @return The rank of a member, or null if the player is not a member.
+     */
+    public @Nullable Rank getRank(UUID uuid) {
+        return uuid != null ? ranks.get(uuid) : null;
+    }
+
+    /**
+     * @return A counter that changes whenever a member joins, leaves or changes rank.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public int size() {
+        return order.size();
+    }
+
+    /**
+     * @return The members in join order, an immutable snapshot that later changes do not affect.
+     */
+    public List<UUID> asList() {
+        return order;
+    }
+
+    @Override
+    public @NotNull Iterator<UUID> iterator() {
+        return order.iterator();
+    }
+
+    /**
+     * Adds a member.
+     *
+     * @return false if the player already is a member.
+     */
+    synchronized boolean add(UUID uuid, Rank rank) {
+        if (ranks.putIfAbsent(uuid, rank) != null) return false;
+        List<UUID> next = new ArrayList<>(order.size() + 1);
+        next.addAll(order);
+        next.add(uuid);
+        order = Collections.unmodifiableList(next);
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes a member.
+     *
+     * @return false if the player was not a member.
+     */
+    synchronized boolean remove(UUID uuid) {
+        if (ranks.remove(uuid) == null) return false;
+        List<UUID> next = new ArrayList<>(order);
+        next.remove(uuid);
+        order = Collections.unmodifiableList(next);
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Changes the rank of a member.
+     *
+     * @return false if the player is not a member or already has the rank.
+     */
+    boolean setRank(UUID uuid, Rank rank) {
+        Rank previous = ranks.replace(uuid, rank);
+        if (previous == null || previous == rank) return false;
+        version.incrementAndGet();
+        return !previous.equals(rank);
+    }
+}
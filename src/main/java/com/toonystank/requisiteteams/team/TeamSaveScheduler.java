@@ -1,19 +1,36 @@
 package com.toonystank.requisiteteams.team;
 
 import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.utils.MainConfig;
 import com.toonystank.requisiteteams.utils.MessageUtils;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Scheduler for asynchronously saving all teams at regular intervals.
+ * Scheduler for saving changed teams at regular intervals.
+ * <p>
+ * Changed teams are captured on the server thread, where they are modified, so every save sees a consistent
+ * state; the captured snapshots are then written by the team writer thread.
+ * <p>
+ * In {@code burst} mode every changed team is saved once per interval. In {@code staggered} mode teams are hashed
+ * into slices and one slice is visited per {@code interval / slices}, so each team is still saved once per
+ * interval but the writes are spread evenly. A visit writes at most {@code max-teams-per-slice} teams, the rest
+ * waits for the next visit, and nothing is written while the writer is still behind by {@code max-queued-writes}
+ * batches.
  */
 public class TeamSaveScheduler {
 
     private final TeamManager teamManager;
     private final RequisiteTeams plugin;
     private final long saveIntervalTicks;
+    private BukkitTask task;
 
     /**
      * Constructs a new TeamSaveScheduler.
@@ -29,19 +46,128 @@ public class TeamSaveScheduler {
     }
 
     /**
-     * Starts the asynchronous team save task.
+     * Starts the team save task.
      */
     public void start() {
-        new BukkitRunnable() {
+        MainConfig mainConfig = plugin.getMainConfig();
+        if (mainConfig != null && mainConfig.isAutosaveStaggered()) {
+            int slices = (int) Math.min(mainConfig.getAutosaveSlices(), saveIntervalTicks);
+            task = new StaggeredSave(slices, mainConfig.getAutosaveMaxTeamsPerSlice(), mainConfig.getAutosaveMaxQueuedWrites())
+                    .runTaskTimer(plugin, 1, Math.max(1, saveIntervalTicks / slices));
+            return;
+        }
+        task = new BukkitRunnable() {
             @Override
             public void run() {
-                try {
-                    teamManager.saveAllTeams();
-                    MessageUtils.toConsole("Asynchronously saved all teams", false);
-                } catch (IOException e) {
-                    MessageUtils.toConsole("Failed to asynchronously save teams: " + e.getMessage(), true);
+                if (RequisiteTeams.isShuttingDown()) return;
+                int total = TeamManager.getTeamMap().size();
+                if (teamManager.getDirtyTeams().isEmpty()) return;
+                teamManager.saveDirtyTeamsAsync().whenComplete((saved, error) -> {
+                    if (error != null) {
+                        MessageUtils.toConsole("Failed to asynchronously save teams: " + error.getMessage(), true);
+                        return;
+                    }
+                    MessageUtils.toConsole("Asynchronously saved " + saved + " changed teams, skipped " + Math.max(0, total - saved) + " unchanged", false);
+                });
+                teamManager.writeSnapshot();
+            }
+        }.runTaskTimer(plugin, saveIntervalTicks, saveIntervalTicks);
+    }
+
+    /**
+     * Cancels future runs. Saves that were already captured are still written.
+     */
+    public void stop() {
+        if (task != null) task.cancel();
+        task = null;
+    }
+
+    /**
+     * Visits one slice per run, all state is only touched on the server thread.
+     */
+    private class StaggeredSave extends BukkitRunnable {
+
+        private final int slices;
+        private final int maxTeamsPerSlice;
+        private final int maxQueuedWrites;
+        // changed teams of visited slices that did not fit in the budget yet
+        private final Set<Team> pending = new LinkedHashSet<>();
+        private Cycle cycle;
+        private int slice;
+
+        private StaggeredSave(int slices, int maxTeamsPerSlice, int maxQueuedWrites) {
+            this.slices = slices;
+            this.maxTeamsPerSlice = maxTeamsPerSlice;
+            this.maxQueuedWrites = maxQueuedWrites;
+        }
+
+        @Override
+        public void run() {
+            if (RequisiteTeams.isShuttingDown()) return;
+            if (slice == 0) cycle = startCycle();
+            for (Team team : TeamManager.getTeamMap().values()) {
+                if (team.isDirty() && Math.floorMod(team.getTeamUUID().hashCode(), slices) == slice) pending.add(team);
+            }
+            if (teamManager.getQueuedWrites() >= maxQueuedWrites) {
+                MessageUtils.debug("Team writer is behind, postponing " + pending.size() + " team saves");
+            } else {
+                saveBatch();
+            }
+            if (++slice == slices) {
+                slice = 0;
+                endCycle(cycle);
+            }
+        }
+
+        private void saveBatch() {
+            List<Team> batch = new ArrayList<>(Math.min(pending.size(), maxTeamsPerSlice));
+            Iterator<Team> iterator = pending.iterator();
+            while (iterator.hasNext() && batch.size() < maxTeamsPerSlice) {
+                Team team = iterator.next();
+                iterator.remove();
+                // deleted teams and teams saved in the meantime are skipped
+                if (team.isDirty() && TeamManager.getTeam(team.getTeamUUID()) == team) batch.add(team);
+            }
+            if (batch.isEmpty()) return;
+            cycle.saved += batch.size();
+            AtomicBoolean failed = cycle.failed;
+            teamManager.saveTeamsAsync(batch).whenComplete((saved, error) -> {
+                if (error != null) {
+                    failed.set(true);
+                    MessageUtils.toConsole("Failed to asynchronously save teams: " + error.getMessage(), true);
                 }
+            });
+        }
+
+        private Cycle startCycle() {
+            // every slice of the cycle captures its teams after this point, so together they cover the rotated journal
+            return new Cycle(teamManager.rotateJournal());
+        }
+
+        private void endCycle(Cycle cycle) {
+            if (cycle.journalRotated) {
+                boolean complete = pending.isEmpty();
+                teamManager.finishJournalRotation(() -> complete && !cycle.failed.get());
+            }
+            if (cycle.saved > 0 || !pending.isEmpty()) {
+                MessageUtils.toConsole("Saved " + cycle.saved + " changed teams over the last autosave cycle, " + pending.size() + " postponed", true);
             }
-        }.runTaskTimerAsynchronously(plugin, saveIntervalTicks, saveIntervalTicks);
+            if (cycle.saved > 0) teamManager.writeSnapshot();
+        }
+    }
+
+    /**
+     * State of one staggered autosave cycle. Saves of the cycle report failures to its own flag, so a late failure
+     * can never be counted against the next cycle.
+     */
+    private static class Cycle {
+
+        private final boolean journalRotated;
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private int saved;
+
+        private Cycle(boolean journalRotated) {
+            this.journalRotated = journalRotated;
+        }
     }
-}
\ No newline at end of file
+}
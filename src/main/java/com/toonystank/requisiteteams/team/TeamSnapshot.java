@@ -0,0 +1,24 @@
+package com.toonystank.requisiteteams.team;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable copy of the persisted state of a {@link Team}.
+ *
+ * @param teamUUID  The UUID of the team.
+ * @param name      The name of the team.
+ * @param ownerUUID The UUID of the team owner, may be null.
+ * @param balance   The team balance.
+ * @param level     The current level number.
+ * @param currentXp The XP collected towards the next level.
+ * @param members   Member UUIDs mapped to their rank name, in insertion order.
+ */
+public record TeamSnapshot(UUID teamUUID,
+                           String name,
+                           UUID ownerUUID,
+                           int balance,
+                           int level,
+                           double currentXp,
+                           Map<UUID, String> members) {
+}
@@ -0,0 +1,247 @@
+package com.toonystank.requisiteteams.team;
+
+import com.toonystank.requisiteteams.data.PlayerDataManager;
+import com.toonystank.requisiteteams.level.Level;
+import com.toonystank.requisiteteams.level.LevelData;
+import com.toonystank.requisiteteams.team.rank.Rank;
+import com.toonystank.requisiteteams.team.rank.RankRegistry;
+import com.toonystank.requisiteteams.team.storage.TeamRepository;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the stored team data for problems that make a team fail to load or load wrong: unparsable teams, unknown
+ * levels and ranks, members without player data and players that are a member of several teams.
+ * <p>
+ * Teams are read in chunks and checked on a thread pool; the checks themselves only use the stored data, so the
+ * verifier runs entirely off the server thread. It only reports, repairs are returned as repaired team data for
+ * {@link TeamManager#applyRepairs(java.util.Collection)}.
+ */
+public class TeamVerifier {
+
+    private static final int CHUNK_SIZE = 250;
+    private static final int MAX_THREADS = 8;
+
+    private final TeamRepository repository;
+
+    public TeamVerifier(TeamRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Reads and checks every stored team.
+     *
+     * @param repair            Whether to build repaired versions of the teams with problems that can be repaired.
+     * @param loadedMemberships The loaded player to team index, taken on the server thread before the verification.
+     * @return The report.
+     * @throws IOException If the stored teams cannot be listed or the player store cannot be read.
+     */
+    public Report verify(boolean repair, Map<UUID, UUID> loadedMemberships) throws IOException {
+        long start = System.currentTimeMillis();
+        List<UUID> teamUUIDs = repository.listTeams();
+        List<Issue> issues = Collections.synchronizedList(new ArrayList<>());
+        List<TeamSnapshot> teams = read(teamUUIDs, issues);
+
+        Map<Integer, Level> levels = LevelData.getLevelMap();
+        Map<String, Rank> ranks = Map.copyOf(RankRegistry.getRanks());
+        Rank defaultRank = RankRegistry.getDefaultRank();
+        Rank ownerRank = RankRegistry.getOwnerRank();
+        Map<UUID, List<TeamSnapshot>> teamsByMember = new LinkedHashMap<>();
+        for (TeamSnapshot team : teams) {
+            for (UUID member : team.members().keySet()) {
+                teamsByMember.computeIfAbsent(member, uuid -> new ArrayList<>(1)).add(team);
+            }
+        }
+        // a read error fails the verification, a member must never be reported as an orphan because of it
+        Set<UUID> knownPlayers = PlayerDataManager.findKnownPlayers(teamsByMember.keySet());
+
+        List<Repair> repaired = new ArrayList<>();
+        for (TeamSnapshot team : teams) {
+            boolean changed = false;
+            if (team.name() == null || team.name().isBlank()) {
+                issues.add(new Issue(Type.MISSING_NAME, team.teamUUID(), null, "team has no name"));
+            }
+            int level = team.level();
+            if (!levels.containsKey(level)) {
+                int fixed = closestLevel(levels, level);
+                issues.add(new Issue(Type.UNKNOWN_LEVEL, team.teamUUID(), null, "level " + level + " does not exist" + (fixed > 0 ? ", repairable to " + fixed : "")));
+                if (fixed > 0) {
+                    level = fixed;
+                    changed = true;
+                }
+            }
+            Map<UUID, String> members = new LinkedHashMap<>();
+            for (Map.Entry<UUID, String> member : team.members().entrySet()) {
+                UUID uuid = member.getKey();
+                boolean owner = uuid.equals(team.ownerUUID());
+                List<TeamSnapshot> memberOf = teamsByMember.get(uuid);
+                TeamSnapshot keeper = memberOf.size() > 1 ? keeper(memberOf, uuid, loadedMemberships) : team;
+                if (keeper != team) {
+                    issues.add(new Issue(Type.DUPLICATE_MEMBER, team.teamUUID(), uuid, "also a member of " + (memberOf.size() - 1) + " other teams, kept in " + keeper.teamUUID()));
+                    changed = true;
+                    continue;
+                }
+                if (!knownPlayers.contains(uuid) && !owner) {
+                    issues.add(new Issue(Type.ORPHAN_MEMBER, team.teamUUID(), uuid, "member has no player data"));
+                    changed = true;
+                    continue;
+                }
+                String rank = member.getValue();
+                if (rank == null ? defaultRank == null : !ranks.containsKey(rank)) {
+                    Rank fixed = owner && ownerRank != null ? ownerRank : defaultRank;
+                    issues.add(new Issue(Type.UNKNOWN_RANK, team.teamUUID(), uuid, "rank " + rank + " does not exist" + (fixed != null ? ", repairable to " + fixed.getName() : "")));
+                    if (fixed != null) {
+                        rank = fixed.getName();
+                        changed = true;
+                    }
+                }
+                members.put(uuid, rank);
+            }
+            if (repair && changed) {
+                repaired.add(new Repair(team, new TeamSnapshot(team.teamUUID(), team.name(), team.ownerUUID(), team.balance(), level,
+                        team.currentXp(), Collections.unmodifiableMap(members))));
+            }
+        }
+        return new Report(teamUUIDs.size(), List.copyOf(issues), repaired, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reads the teams in chunks in parallel. A chunk that fails to load is read again team by team to find the
+     * teams that cannot be parsed.
+     */
+    private List<TeamSnapshot> read(List<UUID> teamUUIDs, List<Issue> issues) throws IOException {
+        List<Future<List<TeamSnapshot>>> chunks = new ArrayList<>();
+        ExecutorService executor = newExecutor();
+        try {
+            for (int i = 0; i < teamUUIDs.size(); i += CHUNK_SIZE) {
+                List<UUID> chunk = List.copyOf(teamUUIDs.subList(i, Math.min(i + CHUNK_SIZE, teamUUIDs.size())));
+                chunks.add(executor.submit(() -> readChunk(chunk, issues)));
+            }
+            List<TeamSnapshot> teams = new ArrayList<>(teamUUIDs.size());
+            for (Future<List<TeamSnapshot>> chunk : chunks) {
+                teams.addAll(chunk.get());
+            }
+            return teams;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying teams", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read teams: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<TeamSnapshot> readChunk(List<UUID> chunk, List<Issue> issues) {
+        try {
+            return repository.loadBatch(chunk);
+        } catch (IOException e) {
+            List<TeamSnapshot> teams = new ArrayList<>(chunk.size());
+            for (UUID teamUUID : chunk) {
+                try {
+                    TeamSnapshot team = repository.load(teamUUID);
+                    if (team != null) teams.add(team);
+                } catch (IOException teamError) {
+                    issues.add(new Issue(Type.UNPARSABLE, teamUUID, null, teamError.getMessage()));
+                }
+            }
+            return teams;
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "RequisiteTeams-Verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The team a player in several teams is kept in: the team they own, otherwise the team they are
+     * were loaded in when the verification started, otherwise the first one.
+     */
+    private static TeamSnapshot keeper(List<TeamSnapshot> teams, UUID member, Map<UUID, UUID> loadedMemberships) {
+        for (TeamSnapshot team : teams) {
+            if (member.equals(team.ownerUUID())) return team;
+        }
+        UUID loadedTeam = loadedMemberships.get(member);
+        for (TeamSnapshot team : teams) {
+            if (team.teamUUID().equals(loadedTeam)) return team;
+        }
+        return teams.get(0);
+    }
+
+    /**
+     * @return The highest existing level below the given one, otherwise the lowest existing level, or 0 if there are no levels.
+     */
+    private static int closestLevel(Map<Integer, Level> levels, int level) {
+        int below = 0;
+        int lowest = Integer.MAX_VALUE;
+        for (int existing : levels.keySet()) {
+            if (existing < level && existing > below) below = existing;
+            lowest = Math.min(lowest, existing);
+        }
+        if (below > 0) return below;
+        return lowest == Integer.MAX_VALUE ? 0 : lowest;
+    }
+
+    public enum Type {
+        UNPARSABLE, MISSING_NAME, UNKNOWN_LEVEL, UNKNOWN_RANK, ORPHAN_MEMBER, DUPLICATE_MEMBER
+    }
+
+    /**
+     * A problem found in a stored team.
+     *
+     * @param type     The kind of problem.
+     * @param teamUUID The team.
+     * @param player   The member the problem is about, if any.
+     * @param detail   A description for the console.
+     */
+    public record Issue(Type type, UUID teamUUID, @Nullable UUID player, String detail) {
+
+        @Override
+        public String toString() {
+            return type + " team " + teamUUID + (player != null ? " player " + player : "") + ": " + detail;
+        }
+    }
+
+    /**
+     * A repaired team.
+     *
+     * @param scanned  The team as it was read by the verification.
+     * @param repaired The repaired team.
+     */
+    public record Repair(TeamSnapshot scanned, TeamSnapshot repaired) {
+    }
+
+    /**
+     * @param scanned  The number of stored teams.
+     * @param issues   The problems found.
+     * @param repaired Repaired versions of the teams that could be repaired, empty unless a repair was requested.
+     * @param millis   How long the verification took.
+     */
+    public record Report(int scanned, List<Issue> issues, List<Repair> repaired, long millis) {
+
+        public Map<Type, Integer> countByType() {
+            Map<Type, Integer> counts = new LinkedHashMap<>();
+            for (Issue issue : issues) {
+                counts.merge(issue.type(), 1, Integer::sum);
+            }
+            return counts;
+        }
+    }
+}
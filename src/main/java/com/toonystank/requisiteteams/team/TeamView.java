@@ -0,0 +1,58 @@
+package com.toonystank.requisiteteams.team;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable view of a {@link Team} for readers such as placeholders, the leaderboard and commands.
+ * <p>
+ * A team publishes a new view on the server thread whenever it changes; readers on any thread get the latest
+ * view without locking and always see a consistent state. The version is unique across all views, so it can be
+ * used to cache anything derived from a view.
+ *
+ * @param version     Unique version of this view, higher for views published later.
+ * @param teamUUID    The UUID of the team.
+ * @param name        The name of the team.
+ * @param ownerUUID   The UUID of the team owner, may be null.
+ * @param level       The current level number.
+ * @param currentXp   The XP collected towards the next level.
+ * @param balance     The team balance.
+ * @param members     The members in join order.
+ * @param memberRanks Member UUIDs mapped to their rank name.
+ */
+public record TeamView(long version,
+                       UUID teamUUID,
+                       String name,
+                       @Nullable UUID ownerUUID,
+                       int level,
+                       double currentXp,
+                       int balance,
+                       List<UUID> members,
+                       Map<UUID, String> memberRanks) {
+
+    public int memberCount() {
+        return members.size();
+    }
+
+    /**
+     * @return The rank name of a member, or null if the player is not a member.
+     */
+    public @Nullable String rankOf(UUID playerUUID) {
+        return playerUUID != null ? memberRanks.get(playerUUID) : null;
+    }
+
+    /**
+     * @return The members with the given rank, in join order.
+     */
+    public List<UUID> membersWithRank(String rankName) {
+        List<UUID> result = new ArrayList<>();
+        for (UUID member : members) {
+            if (rankName.equals(memberRanks.get(member))) result.add(member);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+package com.toonystank.requisiteteams.team;
+
+import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.data.PlayerDataManager;
+import com.toonystank.requisiteteams.data.RequisitePlayer;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects XP events from any thread and applies them in batches on the server thread.
+ * <p>
+ * Producers only append to a lock-free queue. Once per tick the queue is drained for at most
+ * {@code max-drain-millis}: the events are summed per player, every player is credited once, and the team shares
+ * are summed per team and added to each team once. The budget covers crediting too, estimated from the cost per
+ * player of the previous drain. Whatever does not fit in the budget stays queued for the next tick. When the
+ * queue is full, new events are rejected instead of growing it.
+ * <p>
+ * The drain only credits cached players. Events for players that are not cached are handed to an async task,
+ * which loads the players and queues their XP again, so the server thread never reads the player store.
+ */
+public class XpIngestQueue {
+
+    // the clock is only read every few events, reading it is not free either
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+    // marks a team that received XP from several players in one batch
+    private static final UUID SEVERAL_PLAYERS = new UUID(0L, 0L);
+    private static final int RESOLVE_TIMEOUT_SECONDS = 10;
+
+    private final RequisiteTeams plugin;
+    private final long maxDrainNanos;
+    private final int maxQueueSize;
+    private final Queue<XpEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger peakDepth = new AtomicInteger();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Set<CompletableFuture<Void>> resolving = ConcurrentHashMap.newKeySet();
+    private volatile long lastDrainNanos;
+    private volatile int lastDrained;
+    // cost of crediting one player in the last drain, server thread only
+    private long applyNanosPerPlayer;
+    private BukkitTask task;
+
+    /**
+     * @param plugin         The RequisiteTeams plugin instance.
+     * @param maxDrainMillis The time a tick may spend applying XP.
+     * @param maxQueueSize   The number of queued events above which new events are rejected.
+     */
+    public XpIngestQueue(RequisiteTeams plugin, int maxDrainMillis, int maxQueueSize) {
+        this.plugin = plugin;
+        this.maxDrainNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxDrainMillis));
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+    }
+
+    /**
+     * Starts draining the queue every tick.
+     */
+    public void start() {
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> drain(maxDrainNanos, false), 1, 1);
+    }
+
+    /**
+     * Stops the drain task, waits for players that are being loaded and applies everything that is still queued,
+     * without a time budget and loading uncached players on the calling thread.
+     * Must be called on the server thread before teams and players stop accepting changes.
+     */
+    public void stop() {
+        if (task != null) task.cancel();
+        task = null;
+        try {
+            CompletableFuture.allOf(resolving.toArray(new CompletableFuture[0])).get(RESOLVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            MessageUtils.warning("Gave up waiting for players with queued XP to load: " + e.getMessage());
+        }
+        // a player evicted while its XP was applied is queued again, give it another round
+        for (int round = 0; round < 3 && !queue.isEmpty(); round++) {
+            drain(Long.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * Queues XP for a player, looked up by name when the XP is applied. Safe to call from any thread.
+     *
+     * @param playerName The name of the player.
+     * @param xp         The XP, must be positive.
+     * @return false if the XP was rejected because it is not positive or the queue is full.
+     */
+    public boolean enqueue(String playerName, double xp) {
+        if (playerName == null) return false;
+        return offer(new XpEvent(null, playerName, xp));
+    }
+
+    /**
+     * Queues XP for a player. Safe to call from any thread.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param xp         The XP, must be positive.
+     * @return false if the XP was rejected because it is not positive or the queue is full.
+     */
+    public boolean enqueue(UUID playerUUID, double xp) {
+        if (playerUUID == null) return false;
+        return offer(new XpEvent(playerUUID, null, xp));
+    }
+
+    private boolean offer(XpEvent event) {
+        if (!(event.xp() > 0) || RequisiteTeams.isShuttingDown()) return false;
+        int size = depth.incrementAndGet();
+        if (size > maxQueueSize) {
+            depth.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        queue.add(event);
+        enqueued.incrementAndGet();
+        peakDepth.accumulateAndGet(size, Math::max);
+        return true;
+    }
+
+    /**
+     * @param budgetNanos   The time the drain may take, including crediting the players.
+     * @param resolveInline Whether players that are not cached are loaded on the calling thread instead of async.
+     */
+    private void drain(long budgetNanos, boolean resolveInline) {
+        if (queue.isEmpty()) return;
+        long start = System.nanoTime();
+        Map<UUID, Double> xpByUUID = new LinkedHashMap<>();
+        List<XpEvent> uncached = new ArrayList<>();
+        int drained = 0;
+        XpEvent event;
+        while ((event = queue.poll()) != null) {
+            depth.decrementAndGet();
+            drained++;
+            RequisitePlayer player = event.playerUUID() != null
+                    ? PlayerDataManager.getCachedPlayer(event.playerUUID())
+                    : PlayerDataManager.getCachedPlayer(event.playerName());
+            if (player != null) {
+                xpByUUID.merge(player.getUuid(), event.xp(), Double::sum);
+            } else {
+                uncached.add(event);
+            }
+            if (drained % CLOCK_CHECK_INTERVAL == 0
+                    && System.nanoTime() - start + xpByUUID.size() * applyNanosPerPlayer >= budgetNanos) break;
+        }
+        long applyStart = System.nanoTime();
+        apply(xpByUUID);
+        if (!xpByUUID.isEmpty()) applyNanosPerPlayer = (System.nanoTime() - applyStart) / xpByUUID.size();
+        applied.addAndGet(drained - uncached.size());
+        if (!uncached.isEmpty()) {
+            if (resolveInline) {
+                apply(resolve(uncached));
+                applied.addAndGet(uncached.size());
+            } else {
+                resolveAsync(uncached);
+            }
+        }
+        lastDrained = drained;
+        lastDrainNanos = System.nanoTime() - start;
+        if (!queue.isEmpty()) {
+            MessageUtils.debug("XP drain used its budget after " + drained + " events, " + depth.get() + " left for the next tick");
+        }
+    }
+
+    /**
+     * Loads the players of the events off the server thread and queues their summed XP again, now cached.
+     */
+    private void resolveAsync(List<XpEvent> events) {
+        CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> resolve(events),
+                        runnable -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, runnable))
+                .thenAccept(resolved -> {
+                    for (Map.Entry<UUID, Double> entry : resolved.entrySet()) {
+                        depth.incrementAndGet();
+                        queue.add(new XpEvent(entry.getKey(), null, entry.getValue()));
+                    }
+                    // the requeued events are counted again when they are applied
+                    applied.addAndGet(events.size() - resolved.size());
+                });
+        resolving.add(future);
+        future.whenComplete((done, error) -> {
+            resolving.remove(future);
+            if (error != null) MessageUtils.error("Failed to load players with queued XP: " + error.getMessage());
+        });
+    }
+
+    /**
+     * Loads the players of the events, reading the player store if needed.
+     *
+     * @return The XP of the events summed per player UUID, without the players that do not exist.
+     */
+    private static Map<UUID, Double> resolve(List<XpEvent> events) {
+        Map<UUID, Double> xpByUUID = new LinkedHashMap<>();
+        for (XpEvent event : events) {
+            RequisitePlayer player = event.playerUUID() != null
+                    ? PlayerDataManager.getPlayer(event.playerUUID())
+                    : PlayerDataManager.getPlayer(event.playerName());
+            if (player == null) {
+                MessageUtils.debug("Dropping " + event.xp() + " XP for unknown player " + (event.playerUUID() != null ? event.playerUUID() : event.playerName()));
+                continue;
+            }
+            xpByUUID.merge(player.getUuid(), event.xp(), Double::sum);
+        }
+        return xpByUUID;
+    }
+
+    /**
+     * Credits every player once and adds the summed team shares to every team once.
+     */
+    private void apply(Map<UUID, Double> xpByUUID) {
+        Map<Team, Double> xpByTeam = new HashMap<>();
+        Map<Team, UUID> contributors = new HashMap<>();
+        for (Map.Entry<UUID, Double> entry : xpByUUID.entrySet()) {
+            RequisitePlayer player = PlayerDataManager.getCachedPlayer(entry.getKey());
+            if (player == null) {
+                // evicted since it was resolved, the server thread does not read the store to get it back
+                MessageUtils.debug("Requeueing " + entry.getValue() + " XP for evicted player " + entry.getKey());
+                depth.incrementAndGet();
+                applied.decrementAndGet();
+                queue.add(new XpEvent(entry.getKey(), null, entry.getValue()));
+                continue;
+            }
+            double share = player.addXP(entry.getValue());
+            Team team = TeamManager.getTeamByPlayer(player.getUuid());
+            if (team == null || team.getTeamLevel() == null) continue;
+            xpByTeam.merge(team, share, Double::sum);
+            contributors.merge(team, player.getUuid(), (first, second) -> SEVERAL_PLAYERS);
+        }
+        for (Map.Entry<Team, Double> entry : xpByTeam.entrySet()) {
+            UUID contributor = contributors.get(entry.getKey());
+            entry.getKey().getTeamLevel().addXp(entry.getValue(), SEVERAL_PLAYERS.equals(contributor) ? null : contributor);
+        }
+    }
+
+    /**
+     * @return The current state of the queue. The peak depth is reset by reading it.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(depth.get(), peakDepth.getAndSet(depth.get()), enqueued.get(), applied.get(), rejected.get(),
+                lastDrained, TimeUnit.NANOSECONDS.toMicros(lastDrainNanos));
+    }
+
+    private record XpEvent(@Nullable UUID playerUUID, @Nullable String playerName, double xp) {
+    }
+
+    /**
+     * @param depth            The number of queued events.
+     * @param peakDepth        The highest number of queued events since the metrics were last read.
+     * @param enqueued         The number of events queued since startup.
+     * @param applied          The number of events applied since startup.
+     * @param rejected         The number of events rejected because the queue was full.
+     * @param lastDrained      The number of events applied by the last drain.
+     * @param lastDrainMicros  How long the last drain took.
+     */
+    public record Metrics(int depth, int peakDepth, long enqueued, long applied, long rejected, int lastDrained, long lastDrainMicros) {
+    }
+}
@@ -10,7 +10,7 @@ public class RankData extends FileConfig {
 
     public RankData() throws IOException {
         super("ranks.yml",false,true);
-        load();
+        batch(this::load);
     }
 
     public void load() throws IOException {
@@ -39,7 +39,7 @@ public class RankData extends FileConfig {
     public void reload() throws IOException {
         super.reload();
         RankRegistry.getRanks().clear();
-        load();
+        batch(this::load);
     }
 
 
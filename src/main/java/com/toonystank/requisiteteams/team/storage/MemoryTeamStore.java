@@ -0,0 +1,72 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps teams in memory only, for tests and throwaway servers. Nothing survives a restart.
+ */
+public class MemoryTeamStore implements TeamRepository {
+
+    private final Map<UUID, TeamSnapshot> teams = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public String getType() {
+        return "memory";
+    }
+
+    @Override
+    public List<UUID> listTeams() {
+        return new ArrayList<>(teams.keySet());
+    }
+
+    @Override
+    public List<TeamSnapshot> loadAll() {
+        return new ArrayList<>(teams.values());
+    }
+
+    @Override
+    public @Nullable TeamSnapshot load(UUID teamUUID) {
+        return teams.get(teamUUID);
+    }
+
+    @Override
+    public void saveBatch(Collection<TeamSnapshot> snapshots) {
+        for (TeamSnapshot snapshot : snapshots) {
+            teams.put(snapshot.teamUUID(), snapshot);
+        }
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void delete(UUID teamUUID) {
+        teams.remove(teamUUID);
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public long getStamp() {
+        return generation.get();
+    }
+
+    @Override
+    public Changes detectChanges() {
+        // nothing but this repository can change the map
+        return new Changes(Set.of(), Set.of());
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+}
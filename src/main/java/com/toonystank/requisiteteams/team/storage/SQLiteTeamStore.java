@@ -0,0 +1,385 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import com.toonystank.requisiteteams.utils.AsyncSQLManager;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import com.toonystank.requisiteteams.utils.SQLManager;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Stores teams in a normalized SQLite database ({@code teams}, {@code team_members} and {@code team_xp} tables).
+ * Saving many teams is done with prepared statement batches inside a single transaction.
+ * Writes go through the single writer thread of {@link AsyncSQLManager}.
+ */
+public class SQLiteTeamStore implements TeamRepository {
+
+    private static final String UPSERT_TEAM = "INSERT INTO teams (uuid, name, owner_uuid, balance) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, owner_uuid = excluded.owner_uuid, balance = excluded.balance";
+    private static final String UPSERT_XP = "INSERT INTO team_xp (team_uuid, level, current_xp) VALUES (?, ?, ?) " +
+            "ON CONFLICT(team_uuid) DO UPDATE SET level = excluded.level, current_xp = excluded.current_xp";
+    private static final String DELETE_MEMBERS = "DELETE FROM team_members WHERE team_uuid = ?";
+    private static final String BUMP_GENERATION = "UPDATE store_meta SET value = value + 1 WHERE key = 'generation'";
+    private static final String INSERT_MEMBER = "INSERT INTO team_members (team_uuid, player_uuid, rank) VALUES (?, ?, ?)";
+    private static final String CREATE_MEMBERS = "CREATE TABLE IF NOT EXISTS team_members (" +
+            "team_uuid TEXT NOT NULL, player_uuid TEXT NOT NULL, rank TEXT NOT NULL, PRIMARY KEY (team_uuid, player_uuid))";
+
+    private static final String SELECT_TEAMS = "SELECT t.uuid, t.name, t.owner_uuid, t.balance, x.level, x.current_xp " +
+            "FROM teams t LEFT JOIN team_xp x ON x.team_uuid = t.uuid";
+
+    private static final int READ_THREADS = 2;
+
+    @Getter
+    private final SQLManager sqlManager;
+    @Getter
+    private final AsyncSQLManager async;
+    // generation after the last write of this store, -1 until the first load
+    private volatile long trackedGeneration = -1;
+
+    public SQLiteTeamStore() throws IOException {
+        this("teams.db", "data");
+    }
+
+    /**
+     * @param fileName The database file.
+     * @param folder   The folder of the file, relative to the data folder of the plugin.
+     */
+    public SQLiteTeamStore(String fileName, String folder) throws IOException {
+        try {
+            this.sqlManager = new SQLManager(fileName, folder, false, false);
+            createTables();
+            this.async = new AsyncSQLManager(sqlManager, READ_THREADS);
+        } catch (SQLException e) {
+            throw new IOException("Failed to open team database: " + e.getMessage(), e);
+        }
+    }
+
+    private void createTables() throws SQLException {
+        sqlManager.execute("CREATE TABLE IF NOT EXISTS teams (" +
+                "uuid TEXT PRIMARY KEY, name TEXT NOT NULL, owner_uuid TEXT, balance INTEGER NOT NULL DEFAULT 0)");
+        sqlManager.execute("CREATE TABLE IF NOT EXISTS team_xp (" +
+                "team_uuid TEXT PRIMARY KEY, level INTEGER NOT NULL DEFAULT 1, current_xp REAL NOT NULL DEFAULT 0)");
+        sqlManager.execute(CREATE_MEMBERS);
+        migrateMembersKey();
+        sqlManager.execute("CREATE TABLE IF NOT EXISTS store_meta (key TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+        sqlManager.execute("INSERT OR IGNORE INTO store_meta (key, value) VALUES ('generation', 0)");
+    }
+
+    /**
+     * Rebuilds a {@code team_members} table keyed by the player alone, written by older versions. With that key a
+     * player in two teams silently moved to whichever team was saved last; keyed by team and player, such a
+     * duplicate is stored as it is and left for {@code /teams admin verify} to report.
+     */
+    private void migrateMembersKey() throws SQLException {
+        boolean keyedByTeam = false;
+        try (Statement stmt = sqlManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(team_members)")) {
+            while (rs.next()) {
+                if ("team_uuid".equals(rs.getString("name")) && rs.getInt("pk") > 0) keyedByTeam = true;
+            }
+        }
+        if (keyedByTeam) return;
+        MessageUtils.toConsole("Migrating team_members to a key of team and player", false);
+        sqlManager.transaction(() -> {
+            try (Statement stmt = sqlManager.getConnection().createStatement()) {
+                stmt.executeUpdate("ALTER TABLE team_members RENAME TO team_members_old");
+                stmt.executeUpdate(CREATE_MEMBERS);
+                stmt.executeUpdate("INSERT INTO team_members (team_uuid, player_uuid, rank) " +
+                        "SELECT team_uuid, player_uuid, rank FROM team_members_old ORDER BY rowid");
+                stmt.executeUpdate("DROP TABLE team_members_old");
+            }
+        });
+        sqlManager.clearCaches();
+    }
+
+    /**
+     * @return A counter bumped by every committed save or delete, used to tell whether a team snapshot is stale.
+     */
+    public synchronized long getGeneration() throws SQLException {
+        PreparedStatement pstmt = sqlManager.prepare("SELECT value FROM store_meta WHERE key = 'generation'");
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    /**
+     * @return The generation before the bump.
+     */
+    private long bumpGeneration() throws SQLException {
+        long generation = getGeneration();
+        sqlManager.prepare(BUMP_GENERATION).executeUpdate();
+        return generation;
+    }
+
+    /**
+     * Follows a committed write of this store, unless someone else wrote since the tracked generation.
+     */
+    private void advanceTrackedGeneration(long before) {
+        if (trackedGeneration == before) trackedGeneration = before + 1;
+    }
+
+    /**
+     * Rows carry no modification time, so changes are only detected as a whole: if the generation moved past the
+     * last write of this store, every team is reloaded.
+     */
+    @Override
+    public @Nullable Changes detectChanges() throws IOException {
+        if (trackedGeneration < 0) return null;
+        return getStamp() == trackedGeneration ? new Changes(Set.of(), Set.of()) : null;
+    }
+
+    @Override
+    public void resetChangeTracking() throws IOException {
+        trackedGeneration = getStamp();
+    }
+
+    /**
+     * Saves the given teams in one transaction on the writer thread.
+     *
+     * @param snapshots The teams to save.
+     * @return Completes when the transaction committed, or exceptionally with the {@link SQLException}.
+     */
+    public CompletableFuture<Void> saveAllAsync(Collection<TeamSnapshot> snapshots) {
+        return async.writeAsync(() -> {
+            writeBatch(snapshots);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes a team on the writer thread.
+     *
+     * @param teamUUID The UUID of the team.
+     * @return Completes when the team was deleted.
+     */
+    public CompletableFuture<Void> deleteAsync(UUID teamUUID) {
+        return async.writeAsync(() -> {
+            deleteRows(teamUUID);
+            return null;
+        });
+    }
+
+    /**
+     * Saves the given teams in one transaction.
+     *
+     * @param snapshots The teams to save.
+     * @throws SQLException If the batch fails, in which case nothing is written.
+     */
+    private synchronized void writeBatch(Collection<TeamSnapshot> snapshots) throws SQLException {
+        if (snapshots.isEmpty()) return;
+        long[] generation = new long[1];
+        PreparedStatement teams = sqlManager.prepare(UPSERT_TEAM);
+        PreparedStatement xp = sqlManager.prepare(UPSERT_XP);
+        PreparedStatement deleteMembers = sqlManager.prepare(DELETE_MEMBERS);
+        PreparedStatement members = sqlManager.prepare(INSERT_MEMBER);
+        try {
+            sqlManager.transaction(() -> {
+                for (TeamSnapshot snapshot : snapshots) {
+                    String teamUUID = snapshot.teamUUID().toString();
+                    teams.setString(1, teamUUID);
+                    teams.setString(2, snapshot.name());
+                    teams.setString(3, snapshot.ownerUUID() != null ? snapshot.ownerUUID().toString() : null);
+                    teams.setInt(4, snapshot.balance());
+                    teams.addBatch();
+
+                    xp.setString(1, teamUUID);
+                    xp.setInt(2, snapshot.level());
+                    xp.setDouble(3, snapshot.currentXp());
+                    xp.addBatch();
+
+                    deleteMembers.setString(1, teamUUID);
+                    deleteMembers.addBatch();
+
+                    for (Map.Entry<UUID, String> member : snapshot.members().entrySet()) {
+                        members.setString(1, teamUUID);
+                        members.setString(2, member.getKey().toString());
+                        members.setString(3, member.getValue());
+                        members.addBatch();
+                    }
+                }
+                teams.executeBatch();
+                xp.executeBatch();
+                deleteMembers.executeBatch();
+                members.executeBatch();
+                generation[0] = bumpGeneration();
+            });
+            advanceTrackedGeneration(generation[0]);
+        } catch (SQLException e) {
+            for (PreparedStatement statement : List.of(teams, xp, deleteMembers, members)) {
+                statement.clearBatch();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "sqlite";
+    }
+
+    @Override
+    public void saveBatch(Collection<TeamSnapshot> teams) throws IOException {
+        await(saveAllAsync(teams), "save teams to");
+    }
+
+    @Override
+    public void delete(UUID teamUUID) throws IOException {
+        await(deleteAsync(teamUUID), "delete team " + teamUUID + " from");
+    }
+
+    private static void await(CompletableFuture<Void> future, String action) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to " + action + " the database: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public long getStamp() throws IOException {
+        try {
+            return getGeneration();
+        } catch (SQLException e) {
+            throw new IOException("Failed to read the team database generation: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized List<UUID> listTeams() throws IOException {
+        List<UUID> teams = new ArrayList<>();
+        try (Statement stmt = sqlManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT uuid FROM teams")) {
+            while (rs.next()) {
+                try {
+                    teams.add(UUID.fromString(rs.getString(1)));
+                } catch (IllegalArgumentException e) {
+                    MessageUtils.toConsole("Invalid UUID in team database: " + rs.getString(1), true);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to list teams in the database: " + e.getMessage(), e);
+        }
+        return teams;
+    }
+
+    /**
+     * Loads every team stored in the database.
+     *
+     * @return The stored teams.
+     * @throws IOException If reading fails.
+     */
+    @Override
+    public synchronized List<TeamSnapshot> loadAll() throws IOException {
+        try {
+            Connection connection = sqlManager.getConnection();
+            Map<String, Map<UUID, String>> membersByTeam = new HashMap<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT team_uuid, player_uuid, rank FROM team_members ORDER BY rowid")) {
+                while (rs.next()) {
+                    try {
+                        membersByTeam.computeIfAbsent(rs.getString(1), key -> new LinkedHashMap<>())
+                                .put(UUID.fromString(rs.getString(2)), rs.getString(3));
+                    } catch (IllegalArgumentException e) {
+                        MessageUtils.toConsole("Invalid member UUID in team database: " + rs.getString(2), true);
+                    }
+                }
+            }
+            List<TeamSnapshot> snapshots = new ArrayList<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(SELECT_TEAMS)) {
+                while (rs.next()) {
+                    TeamSnapshot snapshot = readTeam(rs, membersByTeam.getOrDefault(rs.getString(1), Map.of()));
+                    if (snapshot != null) snapshots.add(snapshot);
+                }
+            }
+            return snapshots;
+        } catch (SQLException e) {
+            throw new IOException("Failed to load teams from the database: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized @Nullable TeamSnapshot load(UUID teamUUID) throws IOException {
+        try {
+            Map<UUID, String> members = new LinkedHashMap<>();
+            PreparedStatement memberQuery = sqlManager.prepare("SELECT player_uuid, rank FROM team_members WHERE team_uuid = ? ORDER BY rowid");
+            memberQuery.setString(1, teamUUID.toString());
+            try (ResultSet rs = memberQuery.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        members.put(UUID.fromString(rs.getString(1)), rs.getString(2));
+                    } catch (IllegalArgumentException e) {
+                        MessageUtils.toConsole("Invalid member UUID in team database: " + rs.getString(1), true);
+                    }
+                }
+            }
+            PreparedStatement teamQuery = sqlManager.prepare(SELECT_TEAMS + " WHERE t.uuid = ?");
+            teamQuery.setString(1, teamUUID.toString());
+            try (ResultSet rs = teamQuery.executeQuery()) {
+                return rs.next() ? readTeam(rs, members) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to load team " + teamUUID + " from the database: " + e.getMessage(), e);
+        }
+    }
+
+    private static @Nullable TeamSnapshot readTeam(ResultSet rs, Map<UUID, String> members) throws SQLException {
+        String teamUUID = rs.getString(1);
+        try {
+            String owner = rs.getString(3);
+            int level = rs.getInt(5);
+            return new TeamSnapshot(
+                    UUID.fromString(teamUUID),
+                    rs.getString(2),
+                    owner != null ? UUID.fromString(owner) : null,
+                    rs.getInt(4),
+                    level > 0 ? level : 1,
+                    rs.getDouble(6),
+                    Collections.unmodifiableMap(members));
+        } catch (IllegalArgumentException e) {
+            MessageUtils.toConsole("Invalid UUID in team database row " + teamUUID + ": " + e.getMessage(), true);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a team and its members from the database.
+     *
+     * @param teamUUID The UUID of the team.
+     * @throws SQLException If the delete fails.
+     */
+    private synchronized void deleteRows(UUID teamUUID) throws SQLException {
+        long[] generation = new long[1];
+        sqlManager.transaction(() -> {
+            for (PreparedStatement statement : List.of(sqlManager.prepare(DELETE_MEMBERS),
+                    sqlManager.prepare("DELETE FROM team_xp WHERE team_uuid = ?"),
+                    sqlManager.prepare("DELETE FROM teams WHERE uuid = ?"))) {
+                statement.setString(1, teamUUID.toString());
+                statement.executeUpdate();
+            }
+            generation[0] = bumpGeneration();
+        });
+        advanceTrackedGeneration(generation[0]);
+    }
+
+    @Override
+    public void close() {
+        async.close(30);
+        closeConnection();
+    }
+
+    private synchronized void closeConnection() {
+        sqlManager.clearCaches();
+        try {
+            if (sqlManager.getConnection() != null) sqlManager.getConnection().close();
+        } catch (SQLException e) {
+            MessageUtils.warning("Failed to close team database: " + e.getMessage());
+        }
+    }
+}
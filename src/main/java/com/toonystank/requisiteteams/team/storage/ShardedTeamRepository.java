@@ -0,0 +1,218 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import com.toonystank.requisiteteams.utils.ShardLayout;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the teams over several {@link SQLiteTeamStore} files by team UUID ({@code teams-0.db} ...), so saves to
+ * different shards are written in parallel by their own writer threads instead of queueing on one database.
+ */
+public class ShardedTeamRepository implements TeamRepository {
+
+    private static final String BASE_NAME = "teams";
+    private static final int RESHARD_BATCH_SIZE = 500;
+
+    private final SQLiteTeamStore[] shards;
+
+    /**
+     * @param shardCount The number of shards, at least 2.
+     * @param folder     The folder of the shard files, relative to the data folder of the plugin.
+     */
+    public ShardedTeamRepository(int shardCount, String folder) throws IOException {
+        this.shards = new SQLiteTeamStore[shardCount];
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                shards[shard] = new SQLiteTeamStore(ShardLayout.fileName(BASE_NAME, shard, shardCount), folder);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the SQLite team store with the given number of shards. If the stored teams were written with a
+     * different number of shards they are redistributed first, before anything else reads them.
+     *
+     * @param shardCount The number of shards, 1 for a single {@code teams.db}.
+     * @return The store.
+     */
+    public static TeamRepository open(int shardCount) throws IOException {
+        shardCount = Math.max(1, shardCount);
+        File folder = new File(RequisiteTeams.getInstance().getDataFolder(), "data");
+        ShardLayout.recover(folder, new File(RequisiteTeams.getInstance().getDataFolder(), ShardLayout.STAGING_FOLDER), BASE_NAME);
+        int storedShards = ShardLayout.detect(folder, BASE_NAME);
+        if (storedShards > 0 && storedShards != shardCount) {
+            reshard(folder, storedShards, shardCount);
+        }
+        return create(shardCount, "data");
+    }
+
+    private static TeamRepository create(int shardCount, String folder) throws IOException {
+        return shardCount == 1 ? new SQLiteTeamStore(ShardLayout.fileName(BASE_NAME, 0, 1), folder) : new ShardedTeamRepository(shardCount, folder);
+    }
+
+    /**
+     * Copies every team from the old layout into a new store in the staging folder and swaps the files.
+     * The old files are kept in {@code data/backup}.
+     */
+    private static void reshard(File folder, int fromShards, int toShards) throws IOException {
+        MessageUtils.toConsole("Resharding teams from " + fromShards + " to " + toShards + " shards...", false);
+        long start = System.currentTimeMillis();
+        File staging = new File(RequisiteTeams.getInstance().getDataFolder(), ShardLayout.STAGING_FOLDER);
+        ShardLayout.clearStaging(staging, BASE_NAME);
+        int copied = 0;
+        TeamRepository source = create(fromShards, "data");
+        try {
+            TeamRepository target = create(toShards, ShardLayout.STAGING_FOLDER);
+            try {
+                List<UUID> teamUUIDs = source.listTeams();
+                for (int i = 0; i < teamUUIDs.size(); i += RESHARD_BATCH_SIZE) {
+                    List<UUID> chunk = teamUUIDs.subList(i, Math.min(i + RESHARD_BATCH_SIZE, teamUUIDs.size()));
+                    List<TeamSnapshot> teams = source.loadBatch(new ArrayList<>(chunk));
+                    target.saveBatch(teams);
+                    copied += teams.size();
+                }
+            } finally {
+                target.close();
+            }
+        } finally {
+            source.close();
+        }
+        ShardLayout.replace(folder, staging, BASE_NAME, fromShards, toShards);
+        MessageUtils.toConsole("Resharded " + copied + " teams in " + (System.currentTimeMillis() - start) + " ms", false);
+    }
+
+    private SQLiteTeamStore shardOf(UUID teamUUID) {
+        return shards[ShardLayout.shardOf(teamUUID, shards.length)];
+    }
+
+    @Override
+    public String getType() {
+        return "sqlite";
+    }
+
+    @Override
+    public List<UUID> listTeams() throws IOException {
+        List<UUID> teams = new ArrayList<>();
+        for (SQLiteTeamStore shard : shards) {
+            teams.addAll(shard.listTeams());
+        }
+        return teams;
+    }
+
+    @Override
+    public List<TeamSnapshot> loadAll() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(shards.length, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "RequisiteTeams-ShardLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<TeamSnapshot>>> loads = new ArrayList<>(shards.length);
+            for (SQLiteTeamStore shard : shards) {
+                loads.add(executor.submit(shard::loadAll));
+            }
+            List<TeamSnapshot> teams = new ArrayList<>();
+            for (Future<List<TeamSnapshot>> load : loads) {
+                teams.addAll(load.get());
+            }
+            return teams;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading teams", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public @Nullable TeamSnapshot load(UUID teamUUID) throws IOException {
+        return shardOf(teamUUID).load(teamUUID);
+    }
+
+    /**
+     * Splits the teams by shard and writes every part in one transaction on the writer of its shard, in parallel.
+     */
+    @Override
+    public void saveBatch(Collection<TeamSnapshot> teams) throws IOException {
+        List<List<TeamSnapshot>> parts = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            parts.add(new ArrayList<>());
+        }
+        for (TeamSnapshot team : teams) {
+            parts.get(ShardLayout.shardOf(team.teamUUID(), shards.length)).add(team);
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (!parts.get(shard).isEmpty()) writes.add(shards[shard].saveAllAsync(parts.get(shard)));
+        }
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // the shards that succeeded keep their part, the teams stay dirty and are written again
+            throw new IOException("Failed to save teams: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void delete(UUID teamUUID) throws IOException {
+        shardOf(teamUUID).delete(teamUUID);
+    }
+
+    @Override
+    public long getStamp() throws IOException {
+        long stamp = shards.length;
+        for (SQLiteTeamStore shard : shards) {
+            stamp = stamp * 31 + shard.getStamp();
+        }
+        return stamp;
+    }
+
+    @Override
+    public @Nullable Changes detectChanges() throws IOException {
+        Set<UUID> changed = new HashSet<>();
+        Set<UUID> removed = new HashSet<>();
+        for (SQLiteTeamStore shard : shards) {
+            Changes changes = shard.detectChanges();
+            if (changes == null) return null;
+            changed.addAll(changes.changed());
+            removed.addAll(changes.removed());
+        }
+        return new Changes(changed, removed);
+    }
+
+    @Override
+    public void resetChangeTracking() throws IOException {
+        for (SQLiteTeamStore shard : shards) {
+            shard.resetChangeTracking();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (SQLiteTeamStore shard : shards) {
+            if (shard != null) shard.close();
+        }
+    }
+}
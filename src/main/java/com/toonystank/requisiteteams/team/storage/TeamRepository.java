@@ -0,0 +1,137 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persists teams as {@link TeamSnapshot}s, independent of the storage format.
+ */
+public interface TeamRepository {
+
+    /**
+     * @return The name of the backend as used in {@code storage.type}.
+     */
+    String getType();
+
+    /**
+     * @return The UUIDs of every stored team.
+     */
+    List<UUID> listTeams() throws IOException;
+
+    /**
+     * Loads every stored team. Teams that cannot be read are skipped and logged.
+     */
+    List<TeamSnapshot> loadAll() throws IOException;
+
+    /**
+     * Loads one team.
+     *
+     * @param teamUUID The UUID of the team.
+     * @return The team, or null if it is not stored.
+     */
+    @Nullable TeamSnapshot load(UUID teamUUID) throws IOException;
+
+    /**
+     * Loads the given teams, skipping the ones that are not stored.
+     */
+    default List<TeamSnapshot> loadBatch(Collection<UUID> teamUUIDs) throws IOException {
+        List<TeamSnapshot> teams = new ArrayList<>(teamUUIDs.size());
+        for (UUID teamUUID : teamUUIDs) {
+            TeamSnapshot team = load(teamUUID);
+            if (team != null) teams.add(team);
+        }
+        return teams;
+    }
+
+    /**
+     * Saves the given teams, as one transaction where the backend supports it.
+     */
+    void saveBatch(Collection<TeamSnapshot> teams) throws IOException;
+
+    /**
+     * Deletes a team.
+     *
+     * @param teamUUID The UUID of the team.
+     */
+    void delete(UUID teamUUID) throws IOException;
+
+    /**
+     * @return A value that changes whenever the stored teams change, used to tell whether a team snapshot is stale.
+     */
+    long getStamp() throws IOException;
+
+    /**
+     * Finds the teams that were changed in the store by something other than this repository, e.g. edited by hand,
+     * since they were last loaded or saved through it.
+     *
+     * @return The changes, or null if the backend cannot tell which teams changed and every team has to be reloaded.
+     */
+    default @Nullable Changes detectChanges() throws IOException {
+        return null;
+    }
+
+    /**
+     * Takes the current state of the store as the baseline for {@link #detectChanges()}.
+     */
+    default void resetChangeTracking() throws IOException {
+    }
+
+    /**
+     * @return Whether the data survives a restart.
+     */
+    default boolean isPersistent() {
+        return true;
+    }
+
+    default void close() {
+    }
+
+    /**
+     * Opens the backend with the given name, with a single SQLite shard.
+     *
+     * @param type {@code yaml}, {@code sqlite} or {@code memory}.
+     * @return The backend.
+     * @throws IllegalArgumentException If the type is unknown.
+     */
+    static TeamRepository open(String type) throws IOException {
+        return open(type, 1);
+    }
+
+    /**
+     * Opens the backend with the given name.
+     *
+     * @param type   {@code yaml}, {@code sqlite} or {@code memory}.
+     * @param shards The number of database files for {@code sqlite}, see {@link ShardedTeamRepository#open(int)}.
+     * @return The backend.
+     * @throws IllegalArgumentException If the type is unknown.
+     */
+    static TeamRepository open(String type, int shards) throws IOException {
+        return switch (type.toLowerCase(Locale.ROOT)) {
+            case "yaml", "yml" -> new YamlTeamStore();
+            case "sqlite" -> ShardedTeamRepository.open(shards);
+            case "memory" -> new MemoryTeamStore();
+            default -> throw new IllegalArgumentException("Unknown storage type " + type + ", expected yaml, sqlite or memory");
+        };
+    }
+
+    /**
+     * Teams changed in the store since the baseline.
+     *
+     * @param changed Teams that were added or modified.
+     * @param removed Teams that no longer exist.
+     */
+    record Changes(Set<UUID> changed, Set<UUID> removed) {
+
+        public boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary snapshot of every team, its members and its XP, used to skip parsing the team store at startup.
+ * <p>
+ * Layout: magic, format version, source stamp, team count, the teams, then a CRC32 of everything before it.
+ * The stamp fingerprints the source of truth (YAML files or database) when the snapshot was written; a snapshot
+ * whose stamp no longer matches, or whose checksum fails, is ignored and the source is loaded instead.
+ */
+public class TeamSnapshotFile {
+
+    private static final int MAGIC = 0x5254534E; // "RTSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    private final Path path;
+
+    public TeamSnapshotFile(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        this.path = folder.resolve("teams.snapshot");
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, syncs it and moves it over the previous one.
+     *
+     * @param stamp The fingerprint of the source of truth, taken before the teams were captured.
+     * @param teams The teams to write.
+     */
+    public void write(long stamp, Collection<Entry> teams) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream fileOut = Channels.newOutputStream(channel);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, 1 << 16), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stamp);
+            out.writeInt(teams.size());
+            for (Entry entry : teams) {
+                TeamSnapshot team = entry.team();
+                writeUUID(out, team.teamUUID());
+                writeString(out, team.name());
+                out.writeBoolean(team.ownerUUID() != null);
+                if (team.ownerUUID() != null) writeUUID(out, team.ownerUUID());
+                out.writeInt(team.balance());
+                out.writeInt(team.level());
+                out.writeDouble(team.currentXp());
+                out.writeBoolean(entry.dirty());
+                out.writeInt(team.members().size());
+                for (Map.Entry<UUID, String> member : team.members().entrySet()) {
+                    writeUUID(out, member.getKey());
+                    writeString(out, member.getValue());
+                }
+            }
+            out.flush();
+            // the checksum covers everything above and is itself not checksummed
+            out.writeLong(crc.getValue());
+            out.flush();
+            // on disk before the move, so a crash can never leave a renamed but unwritten snapshot behind
+            channel.force(true);
+        }
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the snapshot if it exists, is intact and was written from the current source.
+     *
+     * @param expectedStamp The current fingerprint of the source of truth.
+     * @return The teams, or null if the snapshot cannot be used.
+     */
+    public @Nullable List<Entry> read(long expectedStamp) {
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 8 || size > Integer.MAX_VALUE) {
+                MessageUtils.debug("Ignoring team snapshot with invalid size " + size);
+                return null;
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            crc.update(data.slice(0, (int) size - 8));
+            if (data.getLong((int) size - 8) != crc.getValue()) {
+                MessageUtils.warning("Team snapshot checksum mismatch, loading teams from the source instead");
+                return null;
+            }
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                MessageUtils.debug("Ignoring team snapshot with unknown format");
+                return null;
+            }
+            if (data.getLong() != expectedStamp) {
+                MessageUtils.debug("Team snapshot is stale, loading teams from the source instead");
+                return null;
+            }
+            int count = data.getInt();
+            List<Entry> teams = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID teamUUID = readUUID(data);
+                String name = readString(data);
+                UUID ownerUUID = data.get() != 0 ? readUUID(data) : null;
+                int balance = data.getInt();
+                int level = data.getInt();
+                double currentXp = data.getDouble();
+                boolean dirty = data.get() != 0;
+                int memberCount = data.getInt();
+                Map<UUID, String> members = new LinkedHashMap<>(memberCount * 2);
+                for (int j = 0; j < memberCount; j++) {
+                    members.put(readUUID(data), readString(data));
+                }
+                teams.add(new Entry(new TeamSnapshot(teamUUID, name, ownerUUID, balance, level, currentXp,
+                        Collections.unmodifiableMap(members)), dirty));
+            }
+            return teams;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            MessageUtils.warning("Failed to read team snapshot, loading teams from the source instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the snapshot, e.g. after the source was changed outside of the plugin.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(ByteBuffer data) {
+        return new UUID(data.getLong(), data.getLong());
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @Nullable String readString(ByteBuffer data) {
+        int length = data.getInt();
+        if (length < 0) return null;
+        if (length > data.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A team in the snapshot.
+     *
+     * @param team  The team state.
+     * @param dirty Whether the team had unsaved changes when it was captured, so it is saved again after loading.
+     */
+    public record Entry(TeamSnapshot team, boolean dirty) {
+    }
+}
@@ -0,0 +1,183 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only binary journal of team XP changes.
+ * <p>
+ * Every record is length-prefixed and holds the team, the contributing player, the XP delta and the
+ * level and XP of the team after the change. Replaying the latest record of each team on top of the last
+ * saved state restores XP gained since the last autosave, and replaying a record twice is harmless. This relies on
+ * the records of a team being appended in the order of its changes, so they are only appended on the server thread.
+ * <p>
+ * Compaction happens in three steps: {@link #rotate()} moves the current journal aside, the caller saves
+ * the dirty teams to the main store, then {@link #discardRotated()} deletes the rotated file.
+ */
+public class XpJournal {
+
+    /** Size of a record payload: team, player, delta, level, xp after, timestamp. */
+    private static final int RECORD_SIZE = 16 + 16 + 8 + 4 + 8 + 8;
+
+    @Getter
+    private static XpJournal instance;
+
+    private final Path journalPath;
+    private final Path rotatedPath;
+    private final ByteBuffer buffer = ByteBuffer.allocate(4 + RECORD_SIZE);
+    private FileChannel channel;
+
+    public XpJournal(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        this.journalPath = folder.resolve("xp.journal");
+        this.rotatedPath = folder.resolve("xp.journal.old");
+        this.channel = open();
+        instance = this;
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends a record for an XP or level change. Server thread only.
+     *
+     * @param teamUUID   The team that changed.
+     * @param playerUUID The player that caused the change, or null for admin and system changes.
+     * @param delta      The XP that was added (negative when removed).
+     * @param level      The level of the team after the change.
+     * @param currentXp  The XP of the team after the change.
+     */
+    public synchronized void append(UUID teamUUID, @Nullable UUID playerUUID, double delta, int level, double currentXp) {
+        if (channel == null) return;
+        buffer.clear();
+        buffer.putInt(RECORD_SIZE);
+        buffer.putLong(teamUUID.getMostSignificantBits());
+        buffer.putLong(teamUUID.getLeastSignificantBits());
+        buffer.putLong(playerUUID != null ? playerUUID.getMostSignificantBits() : 0L);
+        buffer.putLong(playerUUID != null ? playerUUID.getLeastSignificantBits() : 0L);
+        buffer.putDouble(delta);
+        buffer.putInt(level);
+        buffer.putDouble(currentXp);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            MessageUtils.error("Failed to append to XP journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the rotated and current journal and returns the latest record of every team.
+     * A truncated record at the end of a file, left by a crash mid-write, is ignored.
+     *
+     * @return The latest record per team UUID.
+     * @throws IOException If a journal file cannot be read.
+     */
+    public synchronized Map<UUID, Entry> readLatest() throws IOException {
+        Map<UUID, Entry> latest = new LinkedHashMap<>();
+        int records = read(rotatedPath, latest) + read(journalPath, latest);
+        MessageUtils.debug("Read " + records + " XP journal records for " + latest.size() + " teams");
+        return latest;
+    }
+
+    private int read(Path path, Map<UUID, Entry> latest) throws IOException {
+        if (!Files.exists(path)) return 0;
+        int records = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate((int) Math.min(in.size(), Integer.MAX_VALUE));
+            while (data.hasRemaining()) {
+                if (in.read(data) < 0) break;
+            }
+            data.flip();
+            while (data.remaining() >= 4) {
+                int length = data.getInt();
+                if (length < RECORD_SIZE || length > data.remaining()) {
+                    MessageUtils.warning("Ignoring truncated record at the end of " + path.getFileName());
+                    break;
+                }
+                int next = data.position() + length;
+                UUID teamUUID = new UUID(data.getLong(), data.getLong());
+                long playerMost = data.getLong();
+                long playerLeast = data.getLong();
+                UUID playerUUID = playerMost == 0L && playerLeast == 0L ? null : new UUID(playerMost, playerLeast);
+                Entry entry = new Entry(teamUUID, playerUUID, data.getDouble(), data.getInt(), data.getDouble(), data.getLong());
+                latest.put(teamUUID, entry);
+                data.position(next);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Moves the current journal aside so the records written so far can be discarded once the teams are saved.
+     * If a previous compaction did not finish, the current records are appended to the rotated file instead.
+     */
+    public synchronized void rotate() throws IOException {
+        if (channel == null) return;
+        channel.force(false);
+        channel.close();
+        if (Files.exists(rotatedPath)) {
+            try (FileChannel rotated = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                 FileChannel current = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+                long position = 0;
+                long size = current.size();
+                while (position < size) {
+                    position += current.transferTo(position, size - position, rotated);
+                }
+                rotated.force(false);
+            }
+            Files.delete(journalPath);
+        } else {
+            Files.move(journalPath, rotatedPath);
+        }
+        channel = open();
+    }
+
+    /**
+     * Deletes the rotated journal after the teams it covers were saved.
+     */
+    public synchronized void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            MessageUtils.warning("Failed to close XP journal: " + e.getMessage());
+        }
+        channel = null;
+        if (instance == this) instance = null;
+    }
+
+    /**
+     * A journal record.
+     *
+     * @param teamUUID   The team that changed.
+     * @param playerUUID The contributing player, null for admin and system changes.
+     * @param delta      The XP delta.
+     * @param level      The level of the team after the change.
+     * @param currentXp  The XP of the team after the change.
+     * @param timestamp  The time of the change in epoch milliseconds.
+     */
+    public record Entry(UUID teamUUID, @Nullable UUID playerUUID, double delta, int level, double currentXp, long timestamp) {
+    }
+}
@@ -0,0 +1,288 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.RequisiteTeams;
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import com.toonystank.requisiteteams.utils.MessageUtils;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Stores every team in its own YAML file, {@code teams/<uuid>.yml}, with the layout:
+ * <pre>
+ * name: ...
+ * ownerUUID: ...
+ * level: 1
+ * currentXP: 0.0
+ * balance: 0
+ * players:
+ *   &lt;uuid&gt;:
+ *     rank: ...
+ * </pre>
+ * Files are parsed in parallel when loading and replaced atomically when saving. The modification time, size and
+ * checksum of every file read or written are remembered, so files changed by hand can be found without parsing.
+ */
+public class YamlTeamStore implements TeamRepository {
+
+    private static final int MAX_LOADER_THREADS = 8;
+
+    private final File folder;
+    private final Map<UUID, FileState> fileStates = new ConcurrentHashMap<>();
+
+    public YamlTeamStore() throws IOException {
+        this.folder = new File(RequisiteTeams.getInstance().getDataFolder(), "teams");
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Failed to create teams folder: " + folder);
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "yaml";
+    }
+
+    @Override
+    public List<UUID> listTeams() {
+        List<UUID> teams = new ArrayList<>();
+        for (File teamFile : listFiles()) {
+            UUID teamUUID = toUUID(teamFile);
+            if (teamUUID != null) teams.add(teamUUID);
+        }
+        return teams;
+    }
+
+    @Override
+    public List<TeamSnapshot> loadAll() throws IOException {
+        File[] teamFiles = listFiles();
+        if (teamFiles.length == 0) return new ArrayList<>();
+        long start = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_LOADER_THREADS));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "RequisiteTeams-TeamLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<File, Future<TeamSnapshot>> parsedTeams = new LinkedHashMap<>();
+        List<TeamSnapshot> teams = new ArrayList<>(teamFiles.length);
+        try {
+            for (File teamFile : teamFiles) {
+                UUID teamUUID = toUUID(teamFile);
+                if (teamUUID == null) {
+                    MessageUtils.toConsole("Invalid UUID format in file name: " + teamFile.getName(), true);
+                    continue;
+                }
+                parsedTeams.put(teamFile, executor.submit(() -> parse(teamUUID, teamFile)));
+            }
+            for (Map.Entry<File, Future<TeamSnapshot>> entry : parsedTeams.entrySet()) {
+                try {
+                    teams.add(entry.getValue().get());
+                } catch (ExecutionException e) {
+                    MessageUtils.toConsole("Failed to load team from " + entry.getKey().getName() + ": " + e.getCause().getMessage(), true);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading teams", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        MessageUtils.debug("Parsed " + parsedTeams.size() + " team files with " + threads + " threads in " + (System.currentTimeMillis() - start) + " ms");
+        return teams;
+    }
+
+    @Override
+    public @Nullable TeamSnapshot load(UUID teamUUID) throws IOException {
+        File teamFile = new File(folder, teamUUID + ".yml");
+        if (!teamFile.isFile()) return null;
+        return parse(teamUUID, teamFile);
+    }
+
+    private TeamSnapshot parse(UUID teamUUID, File teamFile) throws IOException {
+        // stat before reading, a write in between then shows up as a change on the next check
+        long modified = teamFile.lastModified();
+        long size = teamFile.length();
+        byte[] data = Files.readAllBytes(teamFile.toPath());
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(new String(data, StandardCharsets.UTF_8));
+            fileStates.put(teamUUID, new FileState(modified, size, checksum(data)));
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Invalid YAML in " + teamFile.getName() + ": " + e.getMessage(), e);
+        }
+        String ownerUUIDString = config.getString("ownerUUID");
+        UUID ownerUUID;
+        try {
+            ownerUUID = UUID.fromString(String.valueOf(ownerUUIDString));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid UUID format for player: " + ownerUUIDString, e);
+        }
+        Map<UUID, String> members = new LinkedHashMap<>();
+        ConfigurationSection players = config.getConfigurationSection("players");
+        if (players != null) {
+            for (String stringUUID : players.getKeys(false)) {
+                try {
+                    members.put(UUID.fromString(stringUUID), players.getString(stringUUID + ".rank"));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid UUID format for player: " + stringUUID, e);
+                }
+            }
+        }
+        return new TeamSnapshot(teamUUID,
+                config.getString("name"),
+                ownerUUID,
+                config.getInt("balance", 0),
+                config.getInt("level", 0),
+                config.getDouble("currentXP"),
+                Collections.unmodifiableMap(members));
+    }
+
+    @Override
+    public void saveBatch(Collection<TeamSnapshot> teams) throws IOException {
+        for (TeamSnapshot team : teams) {
+            save(team);
+        }
+    }
+
+    private void save(TeamSnapshot team) throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("name", team.name());
+        config.set("ownerUUID", team.ownerUUID() != null ? team.ownerUUID().toString() : "null");
+        config.set("level", team.level());
+        config.set("currentXP", team.currentXp());
+        config.set("balance", team.balance());
+        for (Map.Entry<UUID, String> member : team.members().entrySet()) {
+            config.set("players." + member.getKey() + ".rank", member.getValue());
+        }
+        Path target = new File(folder, team.teamUUID() + ".yml").toPath();
+        Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        byte[] data = config.saveToString().getBytes(StandardCharsets.UTF_8);
+        Files.write(tempPath, data);
+        try {
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        File targetFile = target.toFile();
+        fileStates.put(team.teamUUID(), new FileState(targetFile.lastModified(), data.length, checksum(data)));
+    }
+
+    @Override
+    public void delete(UUID teamUUID) throws IOException {
+        Files.deleteIfExists(new File(folder, teamUUID + ".yml").toPath());
+        fileStates.remove(teamUUID);
+    }
+
+    /**
+     * Files whose modification time and size are unchanged are skipped; the others are only reported if their
+     * checksum changed too, so touching a file does not reload it.
+     */
+    @Override
+    public Changes detectChanges() throws IOException {
+        Set<UUID> changed = new HashSet<>();
+        Set<UUID> present = new HashSet<>();
+        for (File teamFile : listFiles()) {
+            UUID teamUUID = toUUID(teamFile);
+            if (teamUUID == null) continue;
+            present.add(teamUUID);
+            FileState known = fileStates.get(teamUUID);
+            long modified = teamFile.lastModified();
+            long size = teamFile.length();
+            if (known != null && known.modified() == modified && known.size() == size) continue;
+            if (known != null && known.checksum() != FileState.UNKNOWN && known.size() == size
+                    && checksum(Files.readAllBytes(teamFile.toPath())) == known.checksum()) {
+                fileStates.put(teamUUID, new FileState(modified, size, known.checksum()));
+                continue;
+            }
+            // states are updated when the changed teams are loaded, so a file that fails to parse is reported again
+            changed.add(teamUUID);
+        }
+        Set<UUID> removed = new HashSet<>(fileStates.keySet());
+        removed.removeAll(present);
+        removed.forEach(fileStates::remove);
+        return new Changes(changed, removed);
+    }
+
+    @Override
+    public void resetChangeTracking() {
+        Set<UUID> present = new HashSet<>();
+        for (File teamFile : listFiles()) {
+            UUID teamUUID = toUUID(teamFile);
+            if (teamUUID == null) continue;
+            present.add(teamUUID);
+            long modified = teamFile.lastModified();
+            long size = teamFile.length();
+            FileState known = fileStates.get(teamUUID);
+            if (known == null || known.modified() != modified || known.size() != size) {
+                fileStates.put(teamUUID, new FileState(modified, size, FileState.UNKNOWN));
+            }
+        }
+        fileStates.keySet().retainAll(present);
+    }
+
+    /**
+     * Fingerprints the names, sizes and modification times of the team files.
+     */
+    @Override
+    public long getStamp() {
+        File[] teamFiles = listFiles();
+        long stamp = teamFiles.length;
+        for (File teamFile : teamFiles) {
+            // order independent, so the directory listing does not have to be sorted
+            long fileHash = teamFile.getName().hashCode() * 0x9E3779B97F4A7C15L;
+            stamp += fileHash ^ (teamFile.lastModified() * 31 + teamFile.length());
+        }
+        return stamp;
+    }
+
+    private File[] listFiles() {
+        File[] teamFiles = folder.listFiles((dir, name) -> name.endsWith(".yml"));
+        return teamFiles != null ? teamFiles : new File[0];
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static @Nullable UUID toUUID(File teamFile) {
+        try {
+            return UUID.fromString(teamFile.getName().replace(".yml", ""));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * What a team file looked like when it was last read or written.
+     *
+     * @param checksum CRC32 of the contents, or {@link #UNKNOWN} if only the file attributes were recorded.
+     */
+    private record FileState(long modified, long size, long checksum) {
+        private static final long UNKNOWN = -1;
+    }
+}
@@ -0,0 +1,228 @@
+package com.toonystank.requisiteteams.utils;
+
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade over a {@link SQLManager}.
+ * <p>
+ * SQLite allows a single writer, so every write runs on one dedicated writer thread using the connection of the
+ * wrapped manager, in submission order. Reads run on a small pool where every thread holds its own read-only
+ * connection, which with the WAL journal does not block on the writer. Once a manager is wrapped, writes should
+ * only go through this class.
+ */
+@SuppressWarnings("unused")
+public class AsyncSQLManager {
+
+    @Getter
+    private final SQLManager sqlManager;
+    private final ExecutorService writer;
+    private final ExecutorService readers;
+    private final ThreadLocal<Connection> readConnection = new ThreadLocal<>();
+    private final List<Connection> readConnections = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param sqlManager  The database to wrap, must already be connected.
+     * @param readThreads Number of reader threads.
+     */
+    public AsyncSQLManager(@NotNull SQLManager sqlManager, int readThreads) {
+        this.sqlManager = sqlManager;
+        String name = sqlManager.getFileName().replace(".db", "");
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RequisiteTeams-SQLWriter-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger readerCount = new AtomicInteger();
+        this.readers = Executors.newFixedThreadPool(Math.max(1, readThreads), runnable -> {
+            Thread thread = new Thread(runnable, "RequisiteTeams-SQLReader-" + name + "-" + readerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get a value from the database on a reader thread.
+     *
+     * @param tableColumn String (table.column)
+     * @return The value, or null if the table or row does not exist.
+     */
+    public CompletableFuture<Object> getAsync(String tableColumn) {
+        String[] parts = tableColumn.split("\\.");
+        if (parts.length != 2) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid path format. Expected table.column"));
+        }
+        return supply(readers, () -> {
+            Connection connection = readConnection();
+            if (!sqlManager.tableExists(parts[0], connection)) return null;
+            try (PreparedStatement pstmt = connection.prepareStatement("SELECT " + parts[1] + " FROM " + parts[0] + " LIMIT 1");
+                 ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getObject(1) : null;
+            }
+        });
+    }
+
+    /**
+     * Set a value in the database on the writer thread.
+     *
+     * @param tableColumn String (table.column)
+     * @param value       Object
+     */
+    public CompletableFuture<Void> setAsync(String tableColumn, Object value) {
+        return supply(writer, () -> {
+            sqlManager.set(tableColumn, value);
+            return null;
+        });
+    }
+
+    /**
+     * Run a query on a reader thread.
+     *
+     * @param sql    The query, with {@code ?} placeholders.
+     * @param mapper Maps the result set to the result, runs on the reader thread.
+     * @param params Values bound to the placeholders in order.
+     * @return The mapped result.
+     */
+    public <T> CompletableFuture<T> queryAsync(String sql, ResultMapper<T> mapper, Object... params) {
+        return supply(readers, () -> {
+            try (PreparedStatement pstmt = readConnection().prepareStatement(sql)) {
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setObject(i + 1, params[i]);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return mapper.map(rs);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a group of writes in one transaction on the writer thread.
+     *
+     * @param action The writes, made through {@link #getSqlManager()}.
+     */
+    public CompletableFuture<Void> batchAsync(SQLManager.SQLAction action) {
+        return supply(writer, () -> {
+            sqlManager.transaction(action);
+            return null;
+        });
+    }
+
+    /**
+     * Run a task that writes to the database on the writer thread, without opening a transaction for it.
+     *
+     * @param task The task.
+     * @return The result of the task.
+     */
+    public <T> CompletableFuture<T> writeAsync(SQLTask<T> task) {
+        return supply(writer, task);
+    }
+
+    /**
+     * Continue a future on the server thread, for callers that touch the Bukkit API with the result.
+     *
+     * @param future The future to continue.
+     * @return A future completed on the server thread.
+     */
+    public static <T> CompletableFuture<T> onMainThread(CompletableFuture<T> future) {
+        return future.whenCompleteAsync((result, error) -> {
+        }, mainThreadExecutor());
+    }
+
+    /**
+     * @return An executor running tasks on the server thread, inline if already on it.
+     */
+    public static Executor mainThreadExecutor() {
+        return command -> {
+            if (Bukkit.isPrimaryThread()) {
+                command.run();
+            } else {
+                Handlers.runTask(command);
+            }
+        };
+    }
+
+    /**
+     * Stop accepting work, wait for the queued writes to finish and close the reader connections.
+     *
+     * @param timeoutSeconds How long to wait for queued writes.
+     */
+    public void close(long timeoutSeconds) {
+        writer.shutdown();
+        readers.shutdown();
+        try {
+            if (!writer.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                MessageUtils.warning("Timed out waiting for queued writes to " + sqlManager.getFileName());
+                writer.shutdownNow();
+            }
+            if (!readers.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                readers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.shutdownNow();
+            readers.shutdownNow();
+        }
+        for (Connection connection : readConnections) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        readConnections.clear();
+    }
+
+    private Connection readConnection() throws SQLException {
+        Connection connection = readConnection.get();
+        if (connection == null || connection.isClosed()) {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + sqlManager.getFile().getAbsolutePath(), config.toProperties());
+            readConnection.set(connection);
+            readConnections.add(connection);
+        }
+        return connection;
+    }
+
+    private static <T> CompletableFuture<T> supply(ExecutorService executor, SQLTask<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.run();
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new SQLException("Database is closed", e));
+        }
+    }
+
+    @FunctionalInterface
+    public interface SQLTask<T> {
+        T run() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ResultMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+}
@@ -15,8 +15,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -37,6 +40,9 @@ public class FileConfig {
     private boolean consoleLogger = true;
     @Nullable
     private String corePath = "";
+    // nesting depth of beginBatch() calls, saves are deferred while above zero
+    private int batchDepth = 0;
+    private boolean pendingSave = false;
 
     /**
      * Initializes the Config.
@@ -100,6 +106,7 @@ public class FileConfig {
         this.logger = plugin.getLogger();
         this.corePath = path;
         this.fileName = fileName;
+        this.file = new File(plugin.getDataFolder() + File.separator + path, fileName);
         isInFolder = true;
     }
 
@@ -116,7 +123,7 @@ public class FileConfig {
      * Create the config File. use with InitializeConfig(Plugin, String fileName, String path)
      */
     public void make() throws IOException {
-        process(plugin, file.getName(), corePath, false, false);
+        process(plugin, fileName, corePath, false, false);
     }
     private void process(Plugin plugin, String fileName, String path, boolean force, boolean copy) throws IOException {
         String corePath;
@@ -197,10 +204,71 @@ public class FileConfig {
     }
 
     /**
-     * Save the config.
+     * Save the config. While a batch is open the save is deferred until {@link #commitBatch()}.
      */
-    public void save() throws IOException {
-        config.save(file);
+    public synchronized void save() throws IOException {
+        if (batchDepth > 0) {
+            pendingSave = true;
+            return;
+        }
+        writeToDisk();
+    }
+
+    /**
+     * Starts a batch. Every set, update or defaulting getter called until the matching
+     * {@link #commitBatch()} is kept in memory and written with a single save.
+     * Batches can be nested, only the outermost commit writes the file.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch started with {@link #beginBatch()} and writes the file once if anything changed.
+     */
+    public synchronized void commitBatch() throws IOException {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without beginBatch() on " + fileName);
+        }
+        batchDepth--;
+        if (batchDepth == 0 && pendingSave) {
+            pendingSave = false;
+            writeToDisk();
+        }
+    }
+
+    /**
+     * Runs the given changes as one batch.
+     * @param action changes to apply
+     */
+    public void batch(BatchAction action) throws IOException {
+        beginBatch();
+        try {
+            action.run();
+        } finally {
+            commitBatch();
+        }
+    }
+
+    /**
+     * Serializes the config once and atomically replaces the file, so a crash never leaves a truncated file behind.
+     */
+    private void writeToDisk() throws IOException {
+        String data = config.saveToString();
+        Path target = file.toPath();
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        Files.writeString(temp, data, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @FunctionalInterface
+    public interface BatchAction {
+        void run() throws IOException;
     }
 
     /**
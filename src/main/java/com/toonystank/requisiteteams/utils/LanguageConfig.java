@@ -17,7 +17,7 @@ public class LanguageConfig extends FileConfig {
 
     public LanguageConfig() throws IOException {
         super("language.yml",false,false);
-        init();
+        batch(this::init);
     }
 
     private void init() throws IOException {
@@ -34,7 +34,7 @@ public class LanguageConfig extends FileConfig {
     @Override
     public void reload() throws IOException {
         super.reload();
-        init();
+        batch(this::init);
     }
 
 }
@@ -14,16 +14,55 @@ public class MainConfig extends FileConfig{
 
     public boolean guiBedrockGuiSupportEnable;
 
+    private String storageType;
+    private int storageShards;
+    private boolean xpJournalEnabled;
+    private boolean snapshotEnabled;
+    private int autosaveIntervalSeconds;
+    private boolean autosaveStaggered;
+    private int autosaveSlices;
+    private int autosaveMaxTeamsPerSlice;
+    private int autosaveMaxQueuedWrites;
+    private SQLManager.Tuning sqliteTuning;
+    private int playerCacheMaxSize;
+    private int playerCacheTtlSeconds;
+    private int playerFlushIntervalSeconds;
+    private int shutdownTimeoutSeconds;
+    private int xpIngestMaxDrainMillis;
+    private int xpIngestMaxQueueSize;
+
 
     public MainConfig() throws IOException {
         super("config.yml",false,false);
-        init();
+        batch(this::init);
     }
 
     private void init() throws IOException {
         smallText = getBoolean("utils.smallText",true);
         debug = getBoolean("utils.debug",false);
         guiBedrockGuiSupportEnable = getBoolean("gui.bedrockGuiSupportEnable", true);
+        storageType = getString("storage.type", "yaml");
+        storageShards = Math.max(1, getInt("storage.shards", 1));
+        xpJournalEnabled = getBoolean("storage.journal.enabled", true);
+        snapshotEnabled = getBoolean("storage.snapshot.enabled", true);
+        autosaveIntervalSeconds = Math.max(1, getInt("storage.autosave-interval-seconds", 300));
+        autosaveStaggered = "staggered".equalsIgnoreCase(getString("storage.autosave.mode", "staggered"));
+        autosaveSlices = Math.max(1, getInt("storage.autosave.slices", 60));
+        autosaveMaxTeamsPerSlice = Math.max(1, getInt("storage.autosave.max-teams-per-slice", 100));
+        autosaveMaxQueuedWrites = Math.max(1, getInt("storage.autosave.max-queued-writes", 2));
+        sqliteTuning = new SQLManager.Tuning(
+                getString("storage.sqlite.journal-mode", "WAL"),
+                getString("storage.sqlite.synchronous", "NORMAL"),
+                getInt("storage.sqlite.mmap-size-mb", 256) * 1024L * 1024L,
+                getInt("storage.sqlite.cache-size-kb", 16384),
+                getBoolean("storage.sqlite.temp-store-memory", true));
+        SQLManager.setDefaultTuning(sqliteTuning);
+        playerCacheMaxSize = getInt("cache.players.max-size", 5000);
+        playerCacheTtlSeconds = getInt("cache.players.ttl-seconds", 600);
+        playerFlushIntervalSeconds = Math.max(1, getInt("cache.players.flush-interval-seconds", 60));
+        shutdownTimeoutSeconds = getInt("shutdown.timeout-seconds", 10);
+        xpIngestMaxDrainMillis = Math.max(1, getInt("xp.ingest.max-drain-millis", 2));
+        xpIngestMaxQueueSize = Math.max(1, getInt("xp.ingest.max-queue-size", 100000));
         try {
             if (languageConfig != null) {
                 languageConfig.reload();
@@ -36,9 +75,13 @@ public class MainConfig extends FileConfig{
         }
     }
 
+    public boolean isSQLiteStorage() {
+        return "sqlite".equalsIgnoreCase(storageType);
+    }
+
     @Override
     public void reload() throws IOException {
         super.reload();
-        init();
+        batch(this::init);
     }
 }
@@ -16,11 +16,15 @@ import org.jetbrains.annotations.NotNull;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class MessageUtils {
 
+    // used while the plugin is not enabled, e.g. when the storage classes run in tests
+    private static final Logger fallbackLogger = Logger.getLogger("RequisiteTeams");
 
     public MessageUtils(RequisiteTeams plugin) {
     }
@@ -121,6 +125,10 @@ public class MessageUtils {
         list.forEach(component -> toConsole(component, false));
     }
     public static void toConsole(String message, boolean debug) {
+        if (RequisiteTeams.getInstance() == null) {
+            fallbackLogger.log(debug ? Level.FINE : Level.INFO, message);
+            return;
+        }
         if (debug) {
             if (!RequisiteTeams.getInstance().getMainConfig().isDebug()) return;
         }
@@ -136,6 +144,10 @@ public class MessageUtils {
         Audience.audience(RequisiteTeams.getInstance().getServer().getConsoleSender()).sendMessage(component);
     }
     public static void error(String message) {
+        if (RequisiteTeams.getInstance() == null) {
+            fallbackLogger.severe(message);
+            return;
+        }
         message = message + ". Server version: " + RequisiteTeams.getInstance().getServer().getVersion() + ". Plugin version: " + RequisiteTeams.getInstance().getDescription().getVersion() + ". Please report this error to the plugin developer.";
         message = "[" + RequisiteTeams.getInstance().getPluginName()+ "] " + message;
         Component component = new MineDown(message).toComponent();
@@ -151,6 +163,10 @@ public class MessageUtils {
         }
     }
     public static void debug(String message) {
+        if (RequisiteTeams.getInstance() == null) {
+            fallbackLogger.fine(message);
+            return;
+        }
         if (!RequisiteTeams.getInstance().getMainConfig().isDebug()) return;
       //  message = message + ". Server version: " + RequisiteTeams.getInstance().getServer().getVersion() + ". Plugin version: " + RequisiteTeams.getInstance().getDescription().getVersion() + ". To stop receiving this messages please update your config.yml";
         Component component = new MineDown(message).toComponent();
@@ -165,6 +181,10 @@ public class MessageUtils {
         }
     }
     public static void warning(String message) {
+        if (RequisiteTeams.getInstance() == null) {
+            fallbackLogger.warning(message);
+            return;
+        }
         message = "[" + RequisiteTeams.getInstance().getPluginName()+ "] " + message;
         Component component = new MineDown(message).toComponent();
         warning(component);
@@ -10,8 +10,15 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import java.util.HashSet;
 
@@ -19,6 +26,12 @@ import java.util.HashSet;
 @SuppressWarnings("unused")
 public class SQLManager {
 
+    /**
+     * Tuning applied to every new connection, set from the main config.
+     */
+    @Getter
+    private static Tuning defaultTuning = Tuning.PERFORMANCE;
+
     private File file;
     private final Logger logger;
     private String fileName;
@@ -31,6 +44,22 @@ public class SQLManager {
     @Nullable
     private String corePath = "";
 
+    // prepared statements keyed by their SQL, which is unique per (operation, table, column)
+    private final Map<String, PreparedStatement> statementCache = new ConcurrentHashMap<>();
+    // table name -> whether it exists, and table name -> column names, dropped on DDL
+    private final Map<String, Boolean> knownTables = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> knownColumns = new ConcurrentHashMap<>();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong metadataHits = new AtomicLong();
+    private final AtomicLong metadataMisses = new AtomicLong();
+
+    private Tuning tuning = defaultTuning;
+    // held by the thread owning the open transaction, once per nested scope; other threads wait for it to close
+    // instead of joining a transaction they cannot commit or roll back
+    private final ReentrantLock transactionLock = new ReentrantLock();
+    private boolean restoreAutoCommit = true;
+
     /**
      * Initializes the SQLite database.
      *
@@ -117,8 +146,41 @@ public class SQLManager {
             }
         }
         String url = "jdbc:sqlite:" + file.getAbsolutePath();
+        clearCaches();
         this.connection = DriverManager.getConnection(url);
         connection.setAutoCommit(true);
+        applyTuning();
+    }
+
+    private void applyTuning() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = " + tuning.journalMode());
+            stmt.execute("PRAGMA synchronous = " + tuning.synchronous());
+            stmt.execute("PRAGMA mmap_size = " + tuning.mmapSize());
+            stmt.execute("PRAGMA cache_size = " + -tuning.cacheSizeKb());
+            stmt.execute("PRAGMA temp_store = " + (tuning.tempStoreMemory() ? "MEMORY" : "DEFAULT"));
+        }
+    }
+
+    /**
+     * Set the tuning used by new connections of every database.
+     *
+     * @param tuning Tuning
+     */
+    public static void setDefaultTuning(@NotNull Tuning tuning) {
+        defaultTuning = tuning;
+    }
+
+    /**
+     * Set the tuning of this database and apply it to the open connection.
+     *
+     * @param tuning Tuning
+     * @return SQLManager
+     */
+    public SQLManager setTuning(@NotNull Tuning tuning) throws SQLException {
+        this.tuning = tuning;
+        if (connection != null) applyTuning();
+        return this;
     }
 
     /**
@@ -163,6 +225,7 @@ public class SQLManager {
 
     public boolean deleteConfig() {
         try {
+            clearCaches();
             if (connection != null) {
                 connection.close();
             }
@@ -192,12 +255,19 @@ public class SQLManager {
 
     public @Nullable Set<String> getConfigurationSection(String table, boolean key) throws SQLException {
         if (!tableExists(table)) return null;
+        Set<String> cached = knownColumns.get(table);
+        if (cached != null) {
+            metadataHits.incrementAndGet();
+            return new HashSet<>(cached);
+        }
+        metadataMisses.incrementAndGet();
         Set<String> columns = new HashSet<>();
         ResultSet rs = connection.getMetaData().getColumns(null, null, table, null);
         while (rs.next()) {
             columns.add(rs.getString("COLUMN_NAME"));
         }
         rs.close();
+        knownColumns.put(table, Collections.unmodifiableSet(new HashSet<>(columns)));
         return columns;
     }
 
@@ -212,7 +282,7 @@ public class SQLManager {
      * Save changes to the database (commit).
      */
     public void save() throws SQLException {
-        if (connection != null && !connection.getAutoCommit()) {
+        if (connection != null && !transactionLock.isLocked() && !connection.getAutoCommit()) {
             connection.commit();
         }
     }
@@ -222,6 +292,7 @@ public class SQLManager {
      */
     public void reload() throws SQLException, IOException {
         if (consoleLogger) MessageUtils.toConsole("Reloading database for " + file.getName(), false);
+        clearCaches();
         if (connection != null) {
             connection.close();
         }
@@ -300,8 +371,8 @@ public class SQLManager {
         if (!tableExists(table)) {
             throw new IllegalArgumentException("Table " + table + " does not exist in " + file.getName());
         }
-        String query = "UPDATE " + table + " SET " + column + " = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        PreparedStatement pstmt = prepare("UPDATE " + table + " SET " + column + " = ?");
+        synchronized (pstmt) {
             pstmt.setObject(1, value);
             pstmt.executeUpdate();
         }
@@ -324,8 +395,8 @@ public class SQLManager {
         if (!tableExists(table)) {
             createTable(table);
         }
-        String query = "INSERT OR REPLACE INTO " + table + " (" + column + ") VALUES (?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        PreparedStatement pstmt = prepare("INSERT OR REPLACE INTO " + table + " (" + column + ") VALUES (?)");
+        synchronized (pstmt) {
             pstmt.setObject(1, value);
             pstmt.executeUpdate();
         }
@@ -348,10 +419,12 @@ public class SQLManager {
         if (!tableExists(table)) {
             return null;
         }
-        String query = "SELECT " + column + " FROM " + table + " LIMIT 1";
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
-            if (rs.next()) {
-                return rs.getObject(column);
+        PreparedStatement pstmt = prepare("SELECT " + column + " FROM " + table + " LIMIT 1");
+        synchronized (pstmt) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getObject(column);
+                }
             }
         }
         return null;
@@ -377,12 +450,14 @@ public class SQLManager {
             }
             return result;
         }
-        String query = "SELECT " + column + " FROM " + table;
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
-            while (rs.next()) {
-                String value = rs.getString(column);
-                if (value != null) {
-                    result.add(value);
+        PreparedStatement pstmt = prepare("SELECT " + column + " FROM " + table);
+        synchronized (pstmt) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String value = rs.getString(column);
+                    if (value != null) {
+                        result.add(value);
+                    }
                 }
             }
         }
@@ -408,8 +483,8 @@ public class SQLManager {
         if (!tableExists(table)) {
             throw new IllegalArgumentException("Table " + table + " does not exist in " + file.getName());
         }
-        String query = "INSERT INTO " + table + " (" + column + ") VALUES (?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        PreparedStatement pstmt = prepare("INSERT INTO " + table + " (" + column + ") VALUES (?)");
+        synchronized (pstmt) {
             pstmt.setString(1, value);
             pstmt.executeUpdate();
         }
@@ -502,27 +577,299 @@ public class SQLManager {
     public List<String> getStringList(String tableColumn, List<String> defaultValue) throws SQLException {
         List<String> value = getStringList(tableColumn);
         if (value.isEmpty()) {
-            for (String item : defaultValue) {
-                addToStringList(tableColumn, item);
-            }
+            addAllToStringList(tableColumn, defaultValue);
             return defaultValue;
         }
         return value;
     }
 
+    /**
+     * Set many values in one transaction.
+     *
+     * @param values Values keyed by table.column
+     */
+    public void setAll(@NotNull Map<String, ?> values) throws SQLException {
+        if (values.isEmpty()) return;
+        transaction(() -> {
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    /**
+     * Add many values to a list of strings in one batched transaction.
+     *
+     * @param tableColumn String (table.column)
+     * @param values      Strings to add
+     */
+    public void addAllToStringList(String tableColumn, @NotNull Collection<String> values) throws SQLException {
+        if (values.isEmpty()) return;
+        String[] parts = tableColumn.split("\\.");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid path format. Expected table.column");
+        }
+        String table = parts[0];
+        String column = parts[1];
+        if (!tableExists(table)) {
+            throw new IllegalArgumentException("Table " + table + " does not exist in " + file.getName());
+        }
+        PreparedStatement pstmt = prepare("INSERT INTO " + table + " (" + column + ") VALUES (?)");
+        transaction(() -> {
+            synchronized (pstmt) {
+                try {
+                    for (String value : values) {
+                        pstmt.setString(1, value);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                } catch (SQLException e) {
+                    pstmt.clearBatch();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the given action in one transaction. Writes made by the action are committed together,
+     * or rolled back together if it throws. Scopes may be nested; only the outermost one commits.
+     * A transaction belongs to the thread that opened it, other threads wait until it is closed.
+     *
+     * @param action The writes to group.
+     */
+    public void transaction(@NotNull SQLAction action) throws SQLException {
+        beginTransaction();
+        try {
+            action.run();
+            commitTransaction();
+        } catch (SQLException | RuntimeException e) {
+            rollbackTransaction();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a transaction scope on the calling thread, waiting while another thread has a transaction open.
+     * Each call must be followed by {@link #commitTransaction()} or {@link #rollbackTransaction()} on the same thread.
+     */
+    public void beginTransaction() throws SQLException {
+        transactionLock.lock();
+        if (transactionLock.getHoldCount() > 1) return;
+        try {
+            restoreAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+        } catch (SQLException | RuntimeException e) {
+            transactionLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Close a transaction scope of the calling thread, committing when it is the outermost one.
+     */
+    public void commitTransaction() throws SQLException {
+        if (!transactionLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("commitTransaction() called without beginTransaction() on this thread");
+        }
+        if (transactionLock.getHoldCount() > 1) {
+            transactionLock.unlock();
+            return;
+        }
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            try {
+                connection.setAutoCommit(restoreAutoCommit);
+            } finally {
+                transactionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Roll back the transaction of the calling thread and close every scope of it.
+     * Does nothing if the calling thread has no transaction open.
+     */
+    public void rollbackTransaction() throws SQLException {
+        if (!transactionLock.isHeldByCurrentThread()) return;
+        try {
+            connection.rollback();
+        } finally {
+            try {
+                connection.setAutoCommit(restoreAutoCommit);
+            } finally {
+                while (transactionLock.isHeldByCurrentThread()) {
+                    transactionLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the calling thread has a transaction open.
+     */
+    public boolean isInTransaction() {
+        return transactionLock.isHeldByCurrentThread();
+    }
+
     private boolean tableExists(String table) throws SQLException {
-        try (ResultSet rs = connection.getMetaData().getTables(null, null, table, null)) {
-            return rs.next();
+        return tableExists(table, connection, true);
+    }
+
+    /**
+     * Checks the known tables, looking a table that is not known yet up on a connection of the caller.
+     * <p>
+     * Only tables found there are remembered: the connection may read an older state of the database than the
+     * writer, and a missing table remembered after the writer created it would stay missing until the next
+     * schema change.
+     *
+     * @param table  The table.
+     * @param lookup The connection to look the table up on, owned by the calling thread.
+     * @return true if the table exists.
+     */
+    boolean tableExists(String table, Connection lookup) throws SQLException {
+        return tableExists(table, lookup, false);
+    }
+
+    private boolean tableExists(String table, Connection lookup, boolean rememberMissing) throws SQLException {
+        Boolean known = knownTables.get(table);
+        if (known != null) {
+            metadataHits.incrementAndGet();
+            return known;
+        }
+        metadataMisses.incrementAndGet();
+        try (ResultSet rs = lookup.getMetaData().getTables(null, null, table, null)) {
+            boolean exists = rs.next();
+            if (exists || rememberMissing) knownTables.put(table, exists);
+            return exists;
         }
     }
 
     private void createTable(String table) throws SQLException {
         String query = "CREATE TABLE IF NOT EXISTS " + table + " (id INTEGER PRIMARY KEY AUTOINCREMENT, value TEXT)";
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate(query);
-        }
+        execute(query);
         if (consoleLogger) {
             MessageUtils.toConsole("Created table: " + table, false);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs a schema statement (CREATE, ALTER, DROP...) and drops the cached table metadata and statements.
+     *
+     * @param ddl The statement to run.
+     */
+    public void execute(String ddl) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(ddl);
+        }
+        clearCaches();
+    }
+
+    /**
+     * Get a cached prepared statement for the given SQL, preparing it on first use.
+     * The statement is shared by every thread: callers must synchronize on it and bind every parameter
+     * while holding the lock, as it still carries the parameters of the previous caller.
+     *
+     * @param sql The SQL of the statement.
+     * @return PreparedStatement
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement cached = statementCache.get(sql);
+        if (cached != null) {
+            statementHits.incrementAndGet();
+            return cached;
+        }
+        SQLException[] failure = new SQLException[1];
+        PreparedStatement statement = statementCache.computeIfAbsent(sql, key -> {
+            statementMisses.incrementAndGet();
+            try {
+                return connection.prepareStatement(key);
+            } catch (SQLException e) {
+                failure[0] = e;
+                return null;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return statement;
+    }
+
+    /**
+     * Forgets the cached statements and the known tables and columns.
+     * <p>
+     * Other threads may still hold a statement they got before, so the statements are not closed here; they stay
+     * valid until the connection is closed, which closes them with it.
+     */
+    public void clearCaches() {
+        statementCache.clear();
+        knownTables.clear();
+        knownColumns.clear();
+    }
+
+    public long getStatementHits() {
+        return statementHits.get();
+    }
+
+    public long getStatementMisses() {
+        return statementMisses.get();
+    }
+
+    public long getMetadataHits() {
+        return metadataHits.get();
+    }
+
+    public long getMetadataMisses() {
+        return metadataMisses.get();
+    }
+
+    /**
+     * @return Statement and metadata cache hit/miss counters, for debug output.
+     */
+    public String getCacheStats() {
+        return "statements " + statementHits.get() + " hits / " + statementMisses.get() + " misses, metadata "
+                + metadataHits.get() + " hits / " + metadataMisses.get() + " misses";
+    }
+
+    @FunctionalInterface
+    public interface SQLAction {
+        void run() throws SQLException;
+    }
+
+    /**
+     * SQLite pragmas applied when a connection is opened.
+     *
+     * @param journalMode     Journal mode, e.g. WAL or DELETE
+     * @param synchronous     Sync level, e.g. NORMAL or FULL
+     * @param mmapSize        Bytes of the database to memory-map, 0 to disable
+     * @param cacheSizeKb     Page cache size in KiB
+     * @param tempStoreMemory Whether temporary tables and indices are kept in memory
+     */
+    public record Tuning(String journalMode, String synchronous, long mmapSize, int cacheSizeKb, boolean tempStoreMemory) {
+
+        private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+        private static final Set<String> SYNCHRONOUS = Set.of("OFF", "NORMAL", "FULL", "EXTRA");
+
+        /** SQLite's own defaults. */
+        public static final Tuning DEFAULT = new Tuning("DELETE", "FULL", 0L, 2000, false);
+        /** WAL with relaxed syncing, which stays durable across plugin crashes and only risks the last commits on power loss. */
+        public static final Tuning PERFORMANCE = new Tuning("WAL", "NORMAL", 256L * 1024 * 1024, 16 * 1024, true);
+
+        public Tuning {
+            journalMode = journalMode.toUpperCase(Locale.ROOT);
+            synchronous = synchronous.toUpperCase(Locale.ROOT);
+            if (!JOURNAL_MODES.contains(journalMode)) {
+                MessageUtils.warning("Unknown SQLite journal mode " + journalMode + ", using WAL");
+                journalMode = "WAL";
+            }
+            if (!SYNCHRONOUS.contains(synchronous)) {
+                MessageUtils.warning("Unknown SQLite synchronous level " + synchronous + ", using NORMAL");
+                synchronous = "NORMAL";
+            }
+            mmapSize = Math.max(0L, mmapSize);
+            cacheSizeKb = Math.max(0, cacheSizeKb);
+        }
+    }
+}
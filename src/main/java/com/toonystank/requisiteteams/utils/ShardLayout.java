@@ -0,0 +1,172 @@
+package com.toonystank.requisiteteams.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * File layout of a SQLite store split into shards by UUID: {@code <base>.db} for a single shard and
+ * {@code <base>-0.db} to {@code <base>-<n-1>.db} for {@code n} shards, every shard with its own writer thread.
+ */
+public final class ShardLayout {
+
+    /**
+     * Folder, relative to the data folder of the plugin, in which a store is rebuilt while it is resharded.
+     */
+    public static final String STAGING_FOLDER = "data" + File.separator + "reshard";
+
+    // the database file itself is moved last, so it tells whether a file was moved completely
+    private static final String[] SQLITE_SUFFIXES = {"-wal", "-shm", "-journal", ""};
+    private static final String MARKER_SUFFIX = ".swap";
+
+    private ShardLayout() {
+        throw new UnsupportedOperationException("Class should not be instantiated!");
+    }
+
+    /**
+     * @return The shard of the given UUID.
+     */
+    public static int shardOf(UUID uuid, int shards) {
+        if (shards == 1) return 0;
+        // mixed, so shards do not line up with other buckets taken from UUID.hashCode(), like the autosave slices
+        long mixed = (uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits()) * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (mixed >>> 32), shards);
+    }
+
+    /**
+     * @return The file name of a shard.
+     */
+    public static String fileName(String base, int shard, int shards) {
+        return shards == 1 ? base + ".db" : base + "-" + shard + ".db";
+    }
+
+    /**
+     * Finds how many shards a store was written with.
+     *
+     * @param folder The folder of the store.
+     * @param base   The base name of the store files.
+     * @return The number of shards, or 0 if the store does not exist yet.
+     */
+    public static int detect(File folder, String base) {
+        int shards = 0;
+        while (new File(folder, base + "-" + shards + ".db").isFile()) {
+            shards++;
+        }
+        if (shards > 0) return shards;
+        return new File(folder, base + ".db").isFile() ? 1 : 0;
+    }
+
+    /**
+     * Moves the files of a store with {@code oldShards} shards into a backup folder and the rebuilt store with
+     * {@code newShards} shards from the staging folder into its place. Both stores must be closed.
+     * <p>
+     * A marker in the staging folder records the swap before the first file is moved, so a swap interrupted by a
+     * crash or an I/O error is finished by {@link #recover(File, File, String)} on the next start instead of
+     * leaving the folder without a store.
+     *
+     * @param folder  The folder of the store.
+     * @param staging The folder the new store was written to.
+     * @param base    The base name of the store files.
+     */
+    public static void replace(File folder, File staging, String base, int oldShards, int newShards) throws IOException {
+        Path backup = folder.toPath().resolve("backup").resolve(base + "-" + oldShards + "-shards-" + System.currentTimeMillis());
+        Properties marker = new Properties();
+        marker.setProperty("backup", backup.toString());
+        marker.setProperty("old-shards", String.valueOf(oldShards));
+        marker.setProperty("new-shards", String.valueOf(newShards));
+        Path markerFile = markerFile(staging, base);
+        Path temp = markerFile.resolveSibling(markerFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            marker.store(out, "Reshard of " + base + " in progress, finished on the next start");
+        }
+        Files.move(temp, markerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        swap(folder, staging, base, oldShards, newShards, backup);
+        Files.delete(markerFile);
+        MessageUtils.toConsole("Moved the previous " + base + " files to " + backup, false);
+    }
+
+    /**
+     * Finishes a swap of {@link #replace(File, File, String, int, int)} that was interrupted. Must be called before
+     * {@link #detect(File, String)}, which would otherwise see a half-swapped store.
+     *
+     * @param folder  The folder of the store.
+     * @param staging The staging folder of the store.
+     * @param base    The base name of the store files.
+     * @throws IOException If the swap cannot be finished; the store must then not be opened.
+     */
+    public static void recover(File folder, File staging, String base) throws IOException {
+        Path markerFile = markerFile(staging, base);
+        if (!Files.exists(markerFile)) return;
+        Properties marker = new Properties();
+        try (InputStream in = Files.newInputStream(markerFile)) {
+            marker.load(in);
+        }
+        Path backup;
+        int oldShards;
+        int newShards;
+        try {
+            backup = Path.of(marker.getProperty("backup"));
+            oldShards = Integer.parseInt(marker.getProperty("old-shards"));
+            newShards = Integer.parseInt(marker.getProperty("new-shards"));
+        } catch (RuntimeException e) {
+            throw new IOException("Unreadable reshard marker " + markerFile + ", move the " + base
+                    + " files from " + staging + " into " + folder + " by hand and delete it", e);
+        }
+        MessageUtils.toConsole("Finishing the interrupted reshard of " + base + " from " + oldShards + " to " + newShards + " shards", true);
+        swap(folder, staging, base, oldShards, newShards, backup);
+        Files.delete(markerFile);
+    }
+
+    /**
+     * Moves the old files to the backup and the new files into place. Safe to repeat after an interruption: a new
+     * file still in the staging folder has not been moved, so a file with its name in the store folder is old.
+     */
+    private static void swap(File folder, File staging, String base, int oldShards, int newShards, Path backup) throws IOException {
+        Files.createDirectories(backup);
+        Set<String> newFiles = new HashSet<>();
+        for (int shard = 0; shard < newShards; shard++) {
+            newFiles.add(fileName(base, shard, newShards));
+        }
+        for (int shard = 0; shard < oldShards; shard++) {
+            String fileName = fileName(base, shard, oldShards);
+            if (newFiles.contains(fileName) && !Files.exists(staging.toPath().resolve(fileName))) continue;
+            move(folder.toPath(), backup, fileName);
+        }
+        for (String fileName : newFiles) {
+            move(staging.toPath(), folder.toPath(), fileName);
+        }
+    }
+
+    private static Path markerFile(File staging, String base) throws IOException {
+        Files.createDirectories(staging.toPath());
+        return staging.toPath().resolve(base + MARKER_SUFFIX);
+    }
+
+    /**
+     * Deletes whatever an interrupted reshard left in the staging folder.
+     */
+    public static void clearStaging(File staging, String base) throws IOException {
+        File[] files = staging.listFiles((dir, name) -> name.startsWith(base) && !name.endsWith(MARKER_SUFFIX));
+        if (files == null) return;
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static void move(Path from, Path to, String fileName) throws IOException {
+        for (String suffix : SQLITE_SUFFIXES) {
+            Path source = from.resolve(fileName + suffix);
+            if (Files.exists(source)) {
+                Files.move(source, to.resolve(fileName + suffix), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.toonystank.requisiteteams.team;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingXpTest {
+
+    @Test
+    void fractionalXpDoesNotDrift() {
+        PendingXp pending = new PendingXp();
+        for (int i = 0; i < 1_000_000; i++) {
+            pending.add(0.1, null);
+        }
+        // a double summed the same way ends up at 100000.00000133288
+        assertEquals(100_000d, pending.take().xp());
+    }
+
+    @Test
+    void takeResetsPendingXp() {
+        PendingXp pending = new PendingXp();
+        pending.add(12.5, null);
+        pending.add(-2.25, null);
+        assertEquals(10.25, pending.get());
+
+        assertEquals(10.25, pending.take().xp());
+        assertEquals(0d, pending.get());
+        assertEquals(0d, pending.take().xp());
+    }
+
+    @Test
+    void contributorIsKeptOnlyForASinglePlayer() {
+        UUID player = UUID.randomUUID();
+        PendingXp pending = new PendingXp();
+        pending.add(1, player);
+        pending.add(2, player);
+        assertEquals(new PendingXp.Taken(3, player), pending.take());
+
+        pending.add(1, player);
+        pending.add(1, UUID.randomUUID());
+        assertNull(pending.take().contributor());
+
+        pending.add(1, player);
+        pending.add(1, null);
+        assertNull(pending.take().contributor());
+
+        // a new settle period starts without a contributor
+        pending.add(1, player);
+        assertEquals(player, pending.take().contributor());
+    }
+
+    @Test
+    void clearDropsXpAndContributor() {
+        PendingXp pending = new PendingXp();
+        pending.add(5, UUID.randomUUID());
+        pending.clear();
+        assertEquals(new PendingXp.Taken(0, null), pending.take());
+    }
+
+    @Test
+    void concurrentAddsAreNeverLostWhileTaking() throws Exception {
+        int threads = 8;
+        int addsPerThread = 100_000;
+        PendingXp pending = new PendingXp();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> adders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                adders.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < addsPerThread; i++) {
+                        pending.add(0.001, null);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            // settle while the adders are running, like the server thread does every tick
+            double settled = 0;
+            do {
+                settled += pending.take().xp();
+            } while (adders.stream().anyMatch(future -> !future.isDone()));
+            for (Future<?> adder : adders) {
+                adder.get();
+            }
+            settled += pending.take().xp();
+            assertEquals(threads * addsPerThread * 0.001, settled, 1e-6);
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import com.toonystank.requisiteteams.team.TeamSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TeamSnapshotFileTest {
+
+    private static final long STAMP = 42L;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void writtenTeamsAreReadBack() throws IOException {
+        TeamSnapshotFile file = new TeamSnapshotFile(folder);
+        List<TeamSnapshotFile.Entry> teams = teams();
+
+        file.write(STAMP, teams);
+
+        assertEquals(teams, file.read(STAMP));
+        assertFalse(Files.exists(folder.resolve("teams.snapshot.tmp")));
+    }
+
+    @Test
+    void missingSnapshotIsIgnored() throws IOException {
+        assertNull(new TeamSnapshotFile(folder).read(STAMP));
+    }
+
+    @Test
+    void staleSnapshotIsIgnored() throws IOException {
+        TeamSnapshotFile file = new TeamSnapshotFile(folder);
+        file.write(STAMP, teams());
+
+        assertNull(file.read(STAMP + 1));
+    }
+
+    @Test
+    void everyFlippedByteIsRejected() throws IOException {
+        TeamSnapshotFile file = new TeamSnapshotFile(folder);
+        file.write(STAMP, teams());
+        Path path = folder.resolve("teams.snapshot");
+        byte[] intact = Files.readAllBytes(path);
+
+        for (int i = 0; i < intact.length; i++) {
+            byte[] corrupt = intact.clone();
+            corrupt[i] ^= 0x10;
+            Files.write(path, corrupt);
+            assertNull(file.read(STAMP), "flipped byte " + i);
+        }
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        TeamSnapshotFile file = new TeamSnapshotFile(folder);
+        file.write(STAMP, teams());
+        Path path = folder.resolve("teams.snapshot");
+        byte[] intact = Files.readAllBytes(path);
+
+        for (int length : new int[]{0, 12, intact.length / 2, intact.length - 1}) {
+            Files.write(path, Arrays.copyOf(intact, length));
+            assertNull(file.read(STAMP), "truncated to " + length);
+        }
+    }
+
+    @Test
+    void unknownFormatWithValidChecksumIsRejected() throws IOException {
+        TeamSnapshotFile file = new TeamSnapshotFile(folder);
+        file.write(STAMP, teams());
+        Path path = folder.resolve("teams.snapshot");
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        data.putInt(4, 99);
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.capacity() - 8);
+        data.putLong(data.capacity() - 8, crc.getValue());
+        Files.write(path, data.array());
+
+        assertNull(file.read(STAMP));
+    }
+
+    private static List<TeamSnapshotFile.Entry> teams() {
+        Map<UUID, String> members = new LinkedHashMap<>();
+        UUID owner = UUID.randomUUID();
+        members.put(owner, "owner");
+        members.put(UUID.randomUUID(), "member");
+        members.put(UUID.randomUUID(), null);
+        return List.of(
+                new TeamSnapshotFile.Entry(new TeamSnapshot(UUID.randomUUID(), "Red", owner, 150, 3, 12.75, members), true),
+                new TeamSnapshotFile.Entry(new TeamSnapshot(UUID.randomUUID(), "Blue ★", null, 0, 1, 0, Map.of()), false));
+    }
+}
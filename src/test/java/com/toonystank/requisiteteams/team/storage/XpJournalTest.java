@@ -0,0 +1,137 @@
+package com.toonystank.requisiteteams.team.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XpJournalTest {
+
+    // length prefix, then team, player, delta, level, xp after and timestamp
+    private static final int FRAME_SIZE = 4 + 16 + 16 + 8 + 4 + 8 + 8;
+
+    @TempDir
+    Path folder;
+    private XpJournal journal;
+
+    @BeforeEach
+    void open() throws IOException {
+        journal = new XpJournal(folder);
+    }
+
+    @AfterEach
+    void close() {
+        journal.close();
+    }
+
+    @Test
+    void recordsAreLengthPrefixed() throws IOException {
+        journal.append(UUID.randomUUID(), UUID.randomUUID(), 1.5, 2, 10.5);
+        journal.append(UUID.randomUUID(), null, -3, 1, 0);
+
+        byte[] data = Files.readAllBytes(folder.resolve("xp.journal"));
+        assertEquals(2 * FRAME_SIZE, data.length);
+        assertEquals(FRAME_SIZE - 4, ByteBuffer.wrap(data).getInt());
+        assertEquals(FRAME_SIZE - 4, ByteBuffer.wrap(data).getInt(FRAME_SIZE));
+    }
+
+    @Test
+    void readLatestKeepsLastRecordOfEveryTeam() throws IOException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID player = UUID.randomUUID();
+        journal.append(first, player, 5, 1, 5);
+        journal.append(second, null, 2, 3, 2);
+        journal.append(first, player, 7.25, 2, 0.25);
+
+        Map<UUID, XpJournal.Entry> latest = journal.readLatest();
+
+        assertEquals(List.of(first, second), List.copyOf(latest.keySet()));
+        XpJournal.Entry entry = latest.get(first);
+        assertEquals(player, entry.playerUUID());
+        assertEquals(7.25, entry.delta());
+        assertEquals(2, entry.level());
+        assertEquals(0.25, entry.currentXp());
+        assertNull(latest.get(second).playerUUID());
+    }
+
+    @Test
+    void truncatedRecordAtTheEndIsIgnored() throws IOException {
+        UUID team = UUID.randomUUID();
+        journal.append(team, null, 1, 1, 1);
+        journal.append(team, null, 1, 1, 2);
+        // a crash halfway through the next record
+        ByteBuffer partial = ByteBuffer.allocate(20).putInt(FRAME_SIZE - 4).putLong(team.getMostSignificantBits()).putLong(0L);
+        Files.write(folder.resolve("xp.journal"), partial.array(), StandardOpenOption.APPEND);
+
+        Map<UUID, XpJournal.Entry> latest = journal.readLatest();
+
+        assertEquals(1, latest.size());
+        assertEquals(2, latest.get(team).currentXp());
+    }
+
+    @Test
+    void rotatedRecordsAreReadBeforeCurrentOnesUntilDiscarded() throws IOException {
+        UUID team = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        journal.append(team, null, 1, 1, 1);
+        journal.append(other, null, 4, 1, 4);
+        journal.rotate();
+        journal.append(team, null, 1, 1, 2);
+
+        assertTrue(Files.exists(folder.resolve("xp.journal.old")));
+        Map<UUID, XpJournal.Entry> latest = journal.readLatest();
+        assertEquals(2, latest.get(team).currentXp());
+        assertEquals(4, latest.get(other).currentXp());
+
+        journal.discardRotated();
+
+        assertFalse(Files.exists(folder.resolve("xp.journal.old")));
+        latest = journal.readLatest();
+        assertEquals(1, latest.size());
+        assertEquals(2, latest.get(team).currentXp());
+    }
+
+    @Test
+    void rotatingAgainBeforeDiscardKeepsEveryRecord() throws IOException {
+        UUID team = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        journal.append(team, null, 1, 1, 1);
+        journal.rotate();
+        journal.append(other, null, 3, 1, 3);
+        journal.append(team, null, 1, 1, 2);
+        journal.rotate();
+
+        assertEquals(0, Files.size(folder.resolve("xp.journal")));
+        assertEquals(3L * FRAME_SIZE, Files.size(folder.resolve("xp.journal.old")));
+        Map<UUID, XpJournal.Entry> latest = journal.readLatest();
+        assertEquals(2, latest.get(team).currentXp());
+        assertEquals(3, latest.get(other).currentXp());
+    }
+
+    @Test
+    void closedJournalIgnoresAppends() throws IOException {
+        assertSame(journal, XpJournal.getInstance());
+        journal.close();
+
+        journal.append(UUID.randomUUID(), null, 1, 1, 1);
+
+        assertNull(XpJournal.getInstance());
+        assertEquals(0, Files.size(folder.resolve("xp.journal")));
+    }
+}
@@ -0,0 +1,130 @@
+package com.toonystank.requisiteteams.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLManagerTest {
+
+    @TempDir
+    Path folder;
+    private SQLManager sqlManager;
+
+    @BeforeEach
+    void open() throws SQLException, IOException {
+        sqlManager = new SQLManager("test", folder.toString(), false, false);
+        sqlManager.execute("CREATE TABLE entries (value TEXT NOT NULL)");
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        sqlManager.getConnection().close();
+    }
+
+    @Test
+    void nestedScopesCommitOnlyWithTheOutermostOne() throws SQLException {
+        sqlManager.transaction(() -> {
+            insert("outer");
+            sqlManager.transaction(() -> insert("inner"));
+            assertTrue(sqlManager.isInTransaction());
+            assertEquals(0, committedRows());
+        });
+
+        assertFalse(sqlManager.isInTransaction());
+        assertEquals(2, committedRows());
+        assertTrue(sqlManager.getConnection().getAutoCommit());
+    }
+
+    @Test
+    void failureInNestedScopeRollsBackTheWholeTransaction() throws SQLException {
+        SQLException failure = assertThrows(SQLException.class, () -> sqlManager.transaction(() -> {
+            insert("outer");
+            sqlManager.transaction(() -> {
+                insert("inner");
+                throw new SQLException("inner failed");
+            });
+        }));
+
+        assertEquals("inner failed", failure.getMessage());
+        assertFalse(sqlManager.isInTransaction());
+        assertEquals(0, committedRows());
+        assertTrue(sqlManager.getConnection().getAutoCommit());
+    }
+
+    @Test
+    void otherThreadsWaitForTheOpenTransaction() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        sqlManager.beginTransaction();
+        CompletableFuture<Void> other;
+        try {
+            insert("first");
+            other = CompletableFuture.runAsync(() -> {
+                started.countDown();
+                try {
+                    sqlManager.transaction(() -> {
+                        assertEquals(1, committedRows());
+                        insert("second");
+                    });
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            // the other thread must neither join this transaction nor commit it
+            assertFalse(other.isDone());
+            assertEquals(0, committedRows());
+        } finally {
+            sqlManager.commitTransaction();
+        }
+
+        other.get(5, TimeUnit.SECONDS);
+        assertEquals(2, committedRows());
+    }
+
+    @Test
+    void commitWithoutScopeFailsAndRollbackWithoutScopeDoesNothing() throws SQLException {
+        assertThrows(IllegalStateException.class, sqlManager::commitTransaction);
+        sqlManager.rollbackTransaction();
+
+        insert("after");
+        assertEquals(1, committedRows());
+    }
+
+    private void insert(String value) throws SQLException {
+        PreparedStatement statement = sqlManager.prepare("INSERT INTO entries (value) VALUES (?)");
+        synchronized (statement) {
+            statement.setString(1, value);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Counts the rows on a separate connection, which only sees committed writes.
+     */
+    private int committedRows() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + sqlManager.getFile().getAbsolutePath());
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM entries")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.toonystank.requisiteteams.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardLayoutTest {
+
+    private static final String BASE = "teams";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void singleShardAlwaysMapsToZero() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, ShardLayout.shardOf(UUID.randomUUID(), 1));
+        }
+    }
+
+    @Test
+    void shardOfIsStableAndInRange() {
+        for (int shards = 2; shards <= 16; shards++) {
+            for (int i = 0; i < 1000; i++) {
+                UUID uuid = UUID.randomUUID();
+                int shard = ShardLayout.shardOf(uuid, shards);
+                assertTrue(shard >= 0 && shard < shards, "shard " + shard + " of " + shards);
+                assertEquals(shard, ShardLayout.shardOf(new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()), shards));
+            }
+        }
+    }
+
+    @Test
+    void shardOfSpreadsUuidsEvenly() {
+        int shards = 8;
+        int perShard = 10_000;
+        int[] counts = new int[shards];
+        for (int i = 0; i < shards * perShard; i++) {
+            counts[ShardLayout.shardOf(UUID.randomUUID(), shards)]++;
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - perShard) < perShard / 10, "uneven shard size " + count);
+        }
+    }
+
+    @Test
+    void shardOfDoesNotFollowHashCodeBuckets() {
+        // UUIDs in the same autosave slice must still be spread over every shard
+        int shards = 4;
+        boolean[] seen = new boolean[shards];
+        int found = 0;
+        while (found < 200) {
+            UUID uuid = UUID.randomUUID();
+            if (Math.floorMod(uuid.hashCode(), shards) != 0) continue;
+            seen[ShardLayout.shardOf(uuid, shards)] = true;
+            found++;
+        }
+        for (boolean shard : seen) {
+            assertTrue(shard);
+        }
+    }
+
+    @Test
+    void fileNameAndDetect() throws IOException {
+        assertEquals("teams.db", ShardLayout.fileName(BASE, 0, 1));
+        assertEquals("teams-2.db", ShardLayout.fileName(BASE, 2, 4));
+        assertEquals(0, ShardLayout.detect(folder.toFile(), BASE));
+        createStore(folder, 1, "old");
+        assertEquals(1, ShardLayout.detect(folder.toFile(), BASE));
+        Files.delete(folder.resolve("teams.db"));
+        createStore(folder, 3, "old");
+        assertEquals(3, ShardLayout.detect(folder.toFile(), BASE));
+    }
+
+    @Test
+    void replaceMovesOldStoreToBackupAndNewStoreIntoPlace() throws IOException {
+        Path staging = folder.resolve("reshard");
+        createStore(folder, 2, "old");
+        Files.writeString(folder.resolve("teams-0.db-wal"), "old wal");
+        createStore(staging, 4, "new");
+
+        ShardLayout.replace(folder.toFile(), staging.toFile(), BASE, 2, 4);
+
+        assertEquals(4, ShardLayout.detect(folder.toFile(), BASE));
+        for (int shard = 0; shard < 4; shard++) {
+            assertEquals("new " + shard, Files.readString(folder.resolve(ShardLayout.fileName(BASE, shard, 4))));
+        }
+        assertFalse(Files.exists(folder.resolve("teams-0.db-wal")));
+        Path backup = onlyBackup();
+        assertEquals("old 0", Files.readString(backup.resolve("teams-0.db")));
+        assertEquals("old 1", Files.readString(backup.resolve("teams-1.db")));
+        assertEquals("old wal", Files.readString(backup.resolve("teams-0.db-wal")));
+        assertFalse(Files.exists(staging.resolve("teams.swap")));
+    }
+
+    @Test
+    void recoverFinishesInterruptedSwap() throws IOException {
+        Path staging = folder.resolve("reshard");
+        Path backup = folder.resolve("backup").resolve("teams-2-shards-0");
+        // interrupted after both old shards were backed up and the first new shard was moved into place
+        Files.createDirectories(backup);
+        Files.writeString(backup.resolve("teams-0.db"), "old 0");
+        Files.writeString(folder.resolve("teams-0.db"), "new 0");
+        Files.writeString(folder.resolve("teams-1.db"), "old 1");
+        for (int shard = 1; shard < 4; shard++) {
+            Files.createDirectories(staging);
+            Files.writeString(staging.resolve(ShardLayout.fileName(BASE, shard, 4)), "new " + shard);
+        }
+        writeMarker(staging, backup, 2, 4);
+
+        ShardLayout.recover(folder.toFile(), staging.toFile(), BASE);
+
+        for (int shard = 0; shard < 4; shard++) {
+            assertEquals("new " + shard, Files.readString(folder.resolve(ShardLayout.fileName(BASE, shard, 4))));
+        }
+        assertEquals("old 0", Files.readString(backup.resolve("teams-0.db")));
+        assertEquals("old 1", Files.readString(backup.resolve("teams-1.db")));
+        assertFalse(Files.exists(staging.resolve("teams.swap")));
+    }
+
+    @Test
+    void recoverWithoutMarkerLeavesStoreAlone() throws IOException {
+        Path staging = folder.resolve("reshard");
+        createStore(folder, 2, "old");
+        createStore(staging, 4, "new");
+
+        ShardLayout.recover(folder.toFile(), staging.toFile(), BASE);
+
+        assertEquals(2, ShardLayout.detect(folder.toFile(), BASE));
+        assertEquals(4, ShardLayout.detect(staging.toFile(), BASE));
+    }
+
+    @Test
+    void recoverRejectsUnreadableMarker() throws IOException {
+        Path staging = folder.resolve("reshard");
+        Files.createDirectories(staging);
+        Files.writeString(staging.resolve("teams.swap"), "old-shards=two");
+
+        assertThrows(IOException.class, () -> ShardLayout.recover(folder.toFile(), staging.toFile(), BASE));
+        assertTrue(Files.exists(staging.resolve("teams.swap")));
+    }
+
+    private static void createStore(Path folder, int shards, String content) throws IOException {
+        Files.createDirectories(folder);
+        for (int shard = 0; shard < shards; shard++) {
+            Files.writeString(folder.resolve(ShardLayout.fileName(BASE, shard, shards)), content + " " + shard);
+        }
+    }
+
+    private static void writeMarker(Path staging, Path backup, int oldShards, int newShards) throws IOException {
+        Properties marker = new Properties();
+        marker.setProperty("backup", backup.toString());
+        marker.setProperty("old-shards", String.valueOf(oldShards));
+        marker.setProperty("new-shards", String.valueOf(newShards));
+        try (OutputStream out = Files.newOutputStream(staging.resolve("teams.swap"))) {
+            marker.store(out, null);
+        }
+    }
+
+    private Path onlyBackup() throws IOException {
+        try (Stream<Path> backups = Files.list(folder.resolve("backup"))) {
+            return backups.reduce((first, second) -> {
+                throw new AssertionError("more than one backup: " + first + ", " + second);
+            }).orElseThrow();
+        }
+    }
+}